@@ -0,0 +1,111 @@
+package com.johannfullhd.chattags.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import com.johannfullhd.chattags.ChatTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Builds a mocked plugin environment that runs without a Bukkit server
+ */
+final class BenchmarkFixtures {
+    
+    private static final ChatColor[] COLORS = Stream.of(ChatColor.values())
+        .filter(ChatColor::isColor)
+        .toArray(ChatColor[]::new);
+    
+    private BenchmarkFixtures() {
+    }
+    
+    /**
+     * Creates a config with the plugin defaults
+     * 
+     * @param storageType Storage backend to select
+     * @return The config
+     */
+    static YamlConfiguration defaultConfig(String storageType) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("tag-settings.min-length", 1);
+        config.set("tag-settings.max-length", 5);
+        config.set("tag-settings.allowed-pattern", "[a-zA-Z0-9_\\s]+");
+        config.set("tag-settings.default-color", "GRAY");
+        config.set("tag-settings.change-cooldown-seconds", 30);
+        config.set("storage.type", storageType);
+        config.set("performance.auto-save-interval", 0);
+        config.set("performance.cache-tags", true);
+        return config;
+    }
+    
+    /**
+     * Creates a mocked plugin backed by a data folder
+     * 
+     * @param dataFolder The plugin data folder
+     * @param config The plugin config
+     * @return The mocked plugin
+     */
+    static ChatTags mockPlugin(File dataFolder, YamlConfiguration config) {
+        Logger logger = Logger.getLogger("ChatTags-Benchmark");
+        logger.setLevel(Level.WARNING);
+        ChatTags plugin = mock(ChatTags.class);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(logger);
+        return plugin;
+    }
+    
+    static Player mockPlayer(UUID uuid, String name) {
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(uuid);
+        when(player.getName()).thenReturn(name);
+        return player;
+    }
+    
+    /**
+     * Generates random enabled tags with valid text
+     * 
+     * @param count Number of tags
+     * @param seed Random seed, so runs are comparable
+     * @return Tags by random UUID
+     */
+    static Map<UUID, PlayerTag> randomTags(int count, long seed) {
+        Random random = new Random(seed);
+        Map<UUID, PlayerTag> tags = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            String text = Integer.toString(random.nextInt(100_000), 36).toUpperCase();
+            tags.put(uuid, new PlayerTag(text, COLORS[random.nextInt(COLORS.length)], random.nextBoolean()));
+        }
+        return tags;
+    }
+    
+    static File createTempDir() throws IOException {
+        return Files.createTempDirectory("chattags-bench").toFile();
+    }
+    
+    static void deleteRecursively(File dir) throws IOException {
+        if (dir == null || !dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
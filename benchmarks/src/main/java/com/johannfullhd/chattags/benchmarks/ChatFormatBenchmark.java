@@ -0,0 +1,104 @@
+package com.johannfullhd.chattags.benchmarks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johannfullhd.chattags.config.ChatTemplate;
+import com.johannfullhd.chattags.listeners.ChatListener;
+import com.johannfullhd.chattags.managers.TagManager;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagCatalogue;
+import com.johannfullhd.chattags.storage.YamlTagStorage;
+
+/**
+ * Measures the chat path: the full listener call with a mocked event, and
+ * formatting a tag on its own
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatFormatBenchmark {
+    
+    private File dataFolder;
+    private TagManager tagManager;
+    private ChatListener listener;
+    private Player player;
+    private PlayerTag cachedTag;
+    private ChatTemplate template;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkFixtures.createTempDir();
+        Map<UUID, PlayerTag> tags = BenchmarkFixtures.randomTags(1, 42L);
+        UUID uuid = tags.keySet().iterator().next();
+        PlayerTag tag = tags.get(uuid).withEnabled(true);
+        
+        // Seed storage directly so no scoreboard (and no server) is needed
+        YamlTagStorage seed = new YamlTagStorage(new File(dataFolder, "playerdata.yml"), Logger.getAnonymousLogger());
+        seed.save(uuid, tag);
+        
+        tagManager = new TagManager(BenchmarkFixtures.mockPlugin(dataFolder, BenchmarkFixtures.defaultConfig("yaml")));
+        tagManager.loadPlayer(uuid);
+        listener = new ChatListener(tagManager);
+        player = BenchmarkFixtures.mockPlayer(uuid, "Benchmark");
+        cachedTag = tagManager.getTag(player);
+        template = ChatTemplate.parse("{tag} &7<{name}>&r {message}");
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tagManager.shutdown();
+        BenchmarkFixtures.deleteRecursively(dataFolder);
+    }
+    
+    @Benchmark
+    public AsyncPlayerChatEvent onPlayerChat() {
+        AsyncPlayerChatEvent event = new AsyncPlayerChatEvent(true, player, "Hello world!", Collections.emptySet());
+        listener.onPlayerChat(event);
+        return event;
+    }
+    
+    @Benchmark
+    public String formattedTagCached() {
+        return cachedTag.getFormattedTag();
+    }
+    
+    @Benchmark
+    public String chatFormatCached() {
+        return cachedTag.getChatFormat(template, TagCatalogue.EMPTY);
+    }
+    
+    @Benchmark
+    public String chatFormatRender() {
+        // What a tag change costs: rendering the template once
+        return template.render(cachedTag.getFormattedTag());
+    }
+    
+    @Benchmark
+    public String formattedTagFreshSnapshot() {
+        // A new snapshot renders once, as after every tag change
+        return cachedTag.withEnabled(true).getFormattedTag();
+    }
+}
@@ -0,0 +1,102 @@
+package com.johannfullhd.chattags.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bukkit.ChatColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.storage.BinaryTagStorage;
+import com.johannfullhd.chattags.storage.H2TagStorage;
+import com.johannfullhd.chattags.storage.TagStorage;
+import com.johannfullhd.chattags.storage.YamlTagStorage;
+
+/**
+ * Measures full saves and loads as well as a single-player save against
+ * each storage backend at different numbers of stored players.
+ * <p>
+ * Every invocation is one full pass, so these run as single shots.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    
+    @Param({"1000", "100000", "1000000"})
+    public int players;
+    
+    @Param({"yaml", "h2", "binary"})
+    public String backend;
+    
+    private File dataFolder;
+    private Map<UUID, PlayerTag> tags;
+    private UUID singleUuid;
+    private TagStorage storage;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataFolder = BenchmarkFixtures.createTempDir();
+        tags = BenchmarkFixtures.randomTags(players, 42L);
+        singleUuid = tags.keySet().iterator().next();
+        storage = open();
+        storage.saveAll(tags);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        BenchmarkFixtures.deleteRecursively(dataFolder);
+    }
+    
+    private TagStorage open() throws IOException {
+        Logger logger = Logger.getAnonymousLogger();
+        if ("h2".equals(backend)) {
+            return new H2TagStorage(new File(dataFolder, "playerdata"), 4, logger);
+        }
+        if ("binary".equals(backend)) {
+            return new BinaryTagStorage(new File(dataFolder, "playerdata.bin"), logger);
+        }
+        return new YamlTagStorage(new File(dataFolder, "playerdata.yml"), logger);
+    }
+    
+    @Benchmark
+    public void saveAll() throws IOException {
+        storage.saveAll(tags);
+    }
+    
+    @Benchmark
+    public Map<UUID, PlayerTag> loadAll() throws IOException {
+        // Fresh instance so file-based backends have to read their file again
+        TagStorage fresh = open();
+        try {
+            return fresh.loadAll();
+        } finally {
+            fresh.close();
+        }
+    }
+    
+    @Benchmark
+    public void saveSingle() throws IOException {
+        storage.save(singleUuid, new PlayerTag("BENCH", ChatColor.GOLD, true));
+    }
+}
@@ -0,0 +1,55 @@
+package com.johannfullhd.chattags.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johannfullhd.chattags.managers.TagManager;
+
+/**
+ * Measures tag text validation including its config lookups
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+    
+    @Param({"VIP", "TooLongTag", "B@d!"})
+    public String text;
+    
+    private File dataFolder;
+    private TagManager tagManager;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkFixtures.createTempDir();
+        tagManager = new TagManager(BenchmarkFixtures.mockPlugin(dataFolder, BenchmarkFixtures.defaultConfig("yaml")));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tagManager.shutdown();
+        BenchmarkFixtures.deleteRecursively(dataFolder);
+    }
+    
+    @Benchmark
+    public boolean isValidTagText() {
+        return tagManager.isValidTagText(text);
+    }
+}
@@ -1,10 +1,16 @@
 package com.johannfullhd.chattags;
 
+import java.io.IOException;
+import java.util.logging.Level;
+
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import com.johannfullhd.chattags.commands.CommandPipeline;
+import com.johannfullhd.chattags.commands.PlayerNameIndex;
 import com.johannfullhd.chattags.commands.TagCommand;
 import com.johannfullhd.chattags.listeners.ChatListener;
+import com.johannfullhd.chattags.listeners.LuckPermsHook;
 import com.johannfullhd.chattags.managers.TagManager;
 
 /**
@@ -16,6 +22,7 @@ import com.johannfullhd.chattags.managers.TagManager;
 public class ChatTags extends JavaPlugin {
     
     private TagManager tagManager;
+    private CommandPipeline commandPipeline;
     
     @Override
     public void onEnable() {
@@ -23,16 +30,32 @@ public class ChatTags extends JavaPlugin {
         saveDefaultConfig();
         
         // Initialize managers
-        tagManager = new TagManager(this);
+        try {
+            tagManager = new TagManager(this);
+            tagManager.registerPermissions();
+            tagManager.startIndexing();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Could not open tag storage, disabling ChatTags", e);
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
         
         // Register commands
-        getCommand("tag").setExecutor(new TagCommand(this, tagManager));
+        commandPipeline = new CommandPipeline(this);
+        PlayerNameIndex playerNames = new PlayerNameIndex();
+        playerNames.addAll(getServer().getOnlinePlayers());
+        getCommand("tag").setExecutor(new TagCommand(this, tagManager, commandPipeline, playerNames));
         
         // Register listeners
         getServer().getPluginManager().registerEvents(new ChatListener(tagManager), this);
+        getServer().getPluginManager().registerEvents(playerNames, this);
+        if (LuckPermsHook.register(this, tagManager::queueGrantRefresh)) {
+            getLogger().info("Listening to LuckPerms for permission changes");
+        }
         
         // Apply appearance for already online players (e.g., after /reload)
         for (Player p : getServer().getOnlinePlayers()) {
+            tagManager.refreshGrantedTags(p);
             tagManager.applyTagAppearance(p);
         }
         
@@ -43,9 +66,12 @@ public class ChatTags extends JavaPlugin {
     
     @Override
     public void onDisable() {
-        // Save all player data
+        // Let running commands finish, then write pending player data
+        if (commandPipeline != null) {
+            commandPipeline.shutdown();
+        }
         if (tagManager != null) {
-            tagManager.saveAllTags();
+            tagManager.shutdown();
         }
         
         getLogger().info("ChatTags has been disabled. All data saved.");
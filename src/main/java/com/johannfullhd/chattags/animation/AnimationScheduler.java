@@ -0,0 +1,194 @@
+package com.johannfullhd.chattags.animation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Plays tag animations from one shared task.
+ * <p>
+ * Players with the same animation and tag text share a track: its frames
+ * are rendered once and every player on it shows the same frame. Each
+ * tick only tracks whose frame moves on are visited, and only their
+ * players are repainted. The task runs only while an animation is in use.
+ * Main thread only.
+ */
+public class AnimationScheduler {
+    
+    private final Plugin plugin;
+    private final Function<String, TagAnimation> animations;
+    private final Consumer<Player> repaint;
+    private final Map<TrackKey, Track> tracks = new HashMap<>();
+    private final Map<UUID, Track> tracksByPlayer = new HashMap<>();
+    private final List<Player> changed = new ArrayList<>();
+    private BukkitTask task;
+    private long tick;
+    
+    /**
+     * @param plugin The owning plugin, used for scheduling
+     * @param animations Resolves an animation name, null if unknown or disabled
+     * @param repaint Called for every player whose frame changed
+     */
+    public AnimationScheduler(Plugin plugin, Function<String, TagAnimation> animations, Consumer<Player> repaint) {
+        this.plugin = plugin;
+        this.animations = animations;
+        this.repaint = repaint;
+    }
+    
+    /**
+     * Moves a player onto the track for their tag and gets its current frame
+     *
+     * @param player The player
+     * @param tag The player's current tag
+     * @return The formatted tag to show, or null if the tag is not animated
+     */
+    public String frame(Player player, PlayerTag tag) {
+        UUID uuid = player.getUniqueId();
+        Track track = tracksByPlayer.get(uuid);
+        TagAnimation animation = tag.isEnabled() && !tag.getTagText().isEmpty() && !tag.getAnimation().isEmpty()
+            ? animations.apply(tag.getAnimation()) : null;
+        if (animation == null) {
+            leave(uuid, track);
+            return null;
+        }
+        if (track == null || track.key.animation != animation || !track.key.text.equals(tag.getTagText())) {
+            leave(uuid, track);
+            track = tracks.computeIfAbsent(new TrackKey(animation, tag.getTagText()), Track::new);
+            track.members.add(uuid);
+            tracksByPlayer.put(uuid, track);
+            if (task == null) {
+                task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+            }
+        }
+        return track.frames[track.index];
+    }
+    
+    /**
+     * Stops animating a player's tag
+     *
+     * @param uuid The player
+     */
+    public void remove(UUID uuid) {
+        leave(uuid, tracksByPlayer.get(uuid));
+    }
+    
+    private void leave(UUID uuid, Track track) {
+        if (track == null) {
+            return;
+        }
+        tracksByPlayer.remove(uuid);
+        track.members.remove(uuid);
+        if (track.members.isEmpty()) {
+            tracks.remove(track.key);
+            if (tracks.isEmpty()) {
+                shutdown();
+            }
+        }
+    }
+    
+    private void tick() {
+        tick++;
+        for (Track track : tracks.values()) {
+            int index = track.indexAt(tick);
+            if (index == track.index) {
+                continue;
+            }
+            track.index = index;
+            for (UUID uuid : track.members) {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null) {
+                    changed.add(player);
+                }
+            }
+        }
+        // Repainting may move players between tracks, so it runs after the scan
+        try {
+            changed.forEach(repaint);
+        } finally {
+            changed.clear();
+        }
+    }
+    
+    /**
+     * @return Number of tracks currently playing
+     */
+    public int getTrackCount() {
+        return tracks.size();
+    }
+    
+    /**
+     * Stops the shared task
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    /**
+     * Identifies a track: the animation instance and the tag text
+     */
+    private static final class TrackKey {
+        
+        private final TagAnimation animation;
+        private final String text;
+        
+        private TrackKey(TagAnimation animation, String text) {
+            this.animation = animation;
+            this.text = text;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TrackKey)) {
+                return false;
+            }
+            TrackKey other = (TrackKey) o;
+            return animation == other.animation && text.equals(other.text);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(animation) + text.hashCode();
+        }
+    }
+    
+    /**
+     * Frames of one animation for one tag text and the players showing them
+     */
+    private final class Track {
+        
+        private final TrackKey key;
+        private final String[] frames;
+        private final Set<UUID> members = new HashSet<>();
+        private int index;
+        
+        private Track(TrackKey key) {
+            this.key = key;
+            this.frames = key.animation.render(key.text);
+            // Joins in step with other tracks of the same animation
+            this.index = indexAt(tick);
+        }
+        
+        private int indexAt(long tick) {
+            return (int) ((tick / key.animation.getIntervalTicks()) % frames.length);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.johannfullhd.chattags.animation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+import com.johannfullhd.chattags.models.ColorCodec;
+import com.johannfullhd.chattags.models.TagColor;
+
+/**
+ * An animation from the {@code animations} section of config.yml.
+ * <p>
+ * Every animation is a loop of a fixed number of frames, so the frames for
+ * a tag text are rendered once up front and only the frame index moves
+ * while it plays, see {@link AnimationScheduler}.
+ */
+public final class TagAnimation {
+    
+    /** Prefix of the permission for an animation, followed by its name */
+    public static final String PERMISSION_PREFIX = "chattags.animation.";
+    
+    /**
+     * How the frames are built
+     */
+    public enum Type {
+        /** The whole tag switches through the colors */
+        CYCLE,
+        /** The colors run across the tag, one letter per frame */
+        GRADIENT,
+        /** Explicit frames with a {tag} placeholder and & color codes */
+        FRAMES
+    }
+    
+    private final String name;
+    private final Type type;
+    private final int intervalTicks;
+    private final TagColor[] colors;
+    private final String[] frames;
+    
+    private TagAnimation(String name, Type type, int intervalTicks, TagColor[] colors, String[] frames) {
+        this.name = name;
+        this.type = type;
+        this.intervalTicks = intervalTicks;
+        this.colors = colors;
+        this.frames = frames;
+    }
+    
+    /**
+     * Reads an animation from its config section
+     *
+     * @param name The animation name, lowercase
+     * @param section The config section
+     * @param logger Logger for invalid values
+     * @return The animation, or null if it is invalid
+     */
+    public static TagAnimation fromConfig(String name, ConfigurationSection section, Logger logger) {
+        Type type;
+        try {
+            type = Type.valueOf(section.getString("type", "cycle").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid type for animation '" + name + "', skipping it");
+            return null;
+        }
+        int interval = Math.max(1, section.getInt("interval-ticks", 10));
+        
+        if (type == Type.FRAMES) {
+            List<String> frames = section.getStringList("frames");
+            if (frames.isEmpty()) {
+                logger.warning("Animation '" + name + "' has no frames, skipping it");
+                return null;
+            }
+            String[] translated = frames.stream()
+                .map(frame -> ChatColor.translateAlternateColorCodes('&', frame))
+                .toArray(String[]::new);
+            return new TagAnimation(name, type, interval, new TagColor[0], translated);
+        }
+        
+        List<TagColor> colors = new ArrayList<>();
+        for (String colorName : section.getStringList("colors")) {
+            // Names or single hex colors, a gradient makes no sense as one step
+            TagColor color = TagColor.parse(colorName);
+            if (color != null && color.getStopCount() == 1) {
+                colors.add(color);
+            } else {
+                logger.warning("Invalid color '" + colorName + "' in animation '" + name + "'");
+            }
+        }
+        if (colors.isEmpty()) {
+            logger.warning("Animation '" + name + "' has no valid colors, skipping it");
+            return null;
+        }
+        return new TagAnimation(name, type, interval, colors.toArray(new TagColor[0]), new String[0]);
+    }
+    
+    /**
+     * Renders all frames of this animation for a tag text
+     *
+     * @param tagText The tag text, not empty; {@code &} codes are dropped
+     * @return The formatted tag of every frame, in order
+     */
+    public String[] render(String tagText) {
+        String text = ColorCodec.strip(tagText);
+        switch (type) {
+            case FRAMES: {
+                String[] rendered = new String[frames.length];
+                for (int i = 0; i < frames.length; i++) {
+                    rendered[i] = frames[i].replace("{tag}", text) + ChatColor.RESET;
+                }
+                return rendered;
+            }
+            case GRADIENT: {
+                String bracketed = "[" + text + "]";
+                String[] rendered = new String[colors.length];
+                StringBuilder builder = new StringBuilder(bracketed.length() * 3 + 2);
+                for (int frame = 0; frame < colors.length; frame++) {
+                    builder.setLength(0);
+                    TagColor last = null;
+                    for (int i = 0; i < bracketed.length(); i++) {
+                        // Shifted by one letter per frame, so the colors run from right to left
+                        TagColor color = colors[(i + frame) % colors.length];
+                        if (!color.equals(last)) {
+                            builder.append(color.startCode());
+                            last = color;
+                        }
+                        builder.append(bracketed.charAt(i));
+                    }
+                    rendered[frame] = builder.append(ChatColor.RESET).toString();
+                }
+                return rendered;
+            }
+            default: {
+                String[] rendered = new String[colors.length];
+                for (int i = 0; i < colors.length; i++) {
+                    rendered[i] = colors[i].colorize("[" + text + "]") + ChatColor.RESET;
+                }
+                return rendered;
+            }
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public int getIntervalTicks() {
+        return intervalTicks;
+    }
+}
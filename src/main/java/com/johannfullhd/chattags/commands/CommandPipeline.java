@@ -0,0 +1,111 @@
+package com.johannfullhd.chattags.commands;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import com.johannfullhd.chattags.ChatTags;
+
+/**
+ * Runs the expensive part of commands off the main thread.
+ * <p>
+ * Work submitted for the same player runs in submission order, so quick
+ * successive commands cannot overtake each other. Results are handed back
+ * to the main thread, where the Bukkit API calls happen. Uses virtual
+ * threads when running on Java 21 or newer.
+ */
+public class CommandPipeline {
+    
+    private final ChatTags plugin;
+    private final ExecutorService executor;
+    private final Map<UUID, CompletableFuture<Void>> queues = new ConcurrentHashMap<>();
+    
+    public CommandPipeline(ChatTags plugin) {
+        this.plugin = plugin;
+        this.executor = createExecutor(plugin);
+    }
+    
+    private static ExecutorService createExecutor(ChatTags plugin) {
+        try {
+            // Looked up reflectively so the plugin still runs on Java 17
+            ExecutorService virtual = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            plugin.getLogger().info("Running commands on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread thread = new Thread(r, "ChatTags-Command-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), factory);
+        }
+    }
+    
+    /**
+     * Runs work off the main thread after everything submitted earlier for
+     * the same player, then passes the result to the main thread
+     *
+     * @param player The player issuing the command
+     * @param work The work to run asynchronously
+     * @param then Called on the main thread with the result
+     */
+    public <T> void submit(Player player, Callable<T> work, Consumer<T> then) {
+        Runnable task = () -> {
+            try {
+                T result = work.call();
+                sync(() -> then.accept(result));
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Error while running a command for " + player.getName(), e);
+                sync(() -> player.sendMessage(ChatColor.RED + "Something went wrong, see the console for details."));
+            }
+        };
+        UUID key = player.getUniqueId();
+        CompletableFuture<Void> queued = queues.compute(key, (k, tail) -> tail == null
+            ? CompletableFuture.runAsync(task, executor)
+            : tail.thenRunAsync(task, executor));
+        queued.whenComplete((r, e) -> queues.remove(key, queued));
+    }
+    
+    /**
+     * Runs a task on the main thread, unless the plugin is shutting down
+     *
+     * @param task The task
+     */
+    public void sync(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+    
+    /**
+     * Stops accepting work and waits for submitted commands to finish so
+     * their changes reach the save queue
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Pending commands did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
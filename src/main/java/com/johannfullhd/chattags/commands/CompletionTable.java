@@ -0,0 +1,39 @@
+package com.johannfullhd.chattags.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed, sorted set of completions looked up by binary search
+ */
+public final class CompletionTable {
+    
+    private final String[] entries;
+    
+    /**
+     * @param entries Lowercase completions, in any order
+     */
+    public CompletionTable(String... entries) {
+        this.entries = entries.clone();
+        Arrays.sort(this.entries);
+    }
+    
+    /**
+     * Finds all entries starting with a prefix
+     * 
+     * @param prefix Lowercase prefix
+     * @return A new, modifiable list of the matching entries in sorted order
+     */
+    public List<String> complete(String prefix) {
+        int from = Arrays.binarySearch(entries, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = from;
+        while (to < entries.length && entries[to].startsWith(prefix)) {
+            to++;
+        }
+        return new ArrayList<>(Arrays.asList(entries).subList(from, to));
+    }
+}
@@ -0,0 +1,70 @@
+package com.johannfullhd.chattags.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Sorted index of online player names for tab completion, kept up to date
+ * on join and quit
+ */
+public class PlayerNameIndex implements Listener {
+    
+    // Lowercase name to display name
+    private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<>();
+    
+    /**
+     * Adds players that are already online, e.g. after a reload
+     * 
+     * @param players The online players
+     */
+    public void addAll(Iterable<? extends Player> players) {
+        for (Player player : players) {
+            add(player);
+        }
+    }
+    
+    private void add(Player player) {
+        names.put(player.getName().toLowerCase(Locale.ROOT), player.getName());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        add(event.getPlayer());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        names.remove(event.getPlayer().getName().toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Finds online players whose name starts with a prefix
+     * 
+     * @param prefix Lowercase prefix
+     * @return Matching names in alphabetical order
+     */
+    List<String> complete(String prefix) {
+        List<String> result = null;
+        for (Map.Entry<String, String> entry : names.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (result == null) {
+                result = new ArrayList<>();
+            }
+            result.add(entry.getValue());
+        }
+        return result != null ? result : Collections.emptyList();
+    }
+}
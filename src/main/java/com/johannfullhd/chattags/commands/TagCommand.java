@@ -1,9 +1,19 @@
 package com.johannfullhd.chattags.commands;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -14,20 +24,48 @@ import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
 import com.johannfullhd.chattags.ChatTags;
+import com.johannfullhd.chattags.animation.TagAnimation;
+import com.johannfullhd.chattags.config.TagSettings;
+import com.johannfullhd.chattags.cooldown.CooldownAction;
+import com.johannfullhd.chattags.cooldown.MutationLimiter;
+import com.johannfullhd.chattags.jobs.BulkJob;
 import com.johannfullhd.chattags.managers.TagManager;
+import com.johannfullhd.chattags.models.ColorCodec;
 import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagCatalogue;
+import com.johannfullhd.chattags.models.TagColor;
+import com.johannfullhd.chattags.search.TagIndex;
+import com.johannfullhd.chattags.search.TagQuery;
 
 /**
  * Handles the /tag command
  */
 public class TagCommand implements CommandExecutor, TabCompleter {
     
+    private static final int PAGE_SIZE = 10;
+    
+    // Completion tables are built once instead of on every keystroke
+    private static final CompletionTable SUBCOMMANDS = new CompletionTable("set", "color", "toggle", "preview", "clear",
+        "list", "search", "animation", "select", "give", "take", "clear-all", "disable-all", "reload", "jobs", "cancel", "stats", "export", "help");
+    private static final CompletionTable COLORS = new CompletionTable(Arrays.stream(ChatColor.values())
+        .filter(ChatColor::isColor)
+        .map(c -> c.name().toLowerCase(Locale.ROOT))
+        .toArray(String[]::new));
+    private static final CompletionTable SEARCH_OPTIONS = new CompletionTable(Stream.concat(
+        Stream.of("enabled", "disabled"),
+        Arrays.stream(ChatColor.values()).filter(ChatColor::isColor).map(c -> "color:" + c.name().toLowerCase(Locale.ROOT)))
+        .toArray(String[]::new));
+    
     private final ChatTags plugin;
     private final TagManager tagManager;
+    private final CommandPipeline pipeline;
+    private final PlayerNameIndex playerNames;
     
-    public TagCommand(ChatTags plugin, TagManager tagManager) {
+    public TagCommand(ChatTags plugin, TagManager tagManager, CommandPipeline pipeline, PlayerNameIndex playerNames) {
         this.plugin = plugin;
         this.tagManager = tagManager;
+        this.pipeline = pipeline;
+        this.playerNames = playerNames;
     }
     
     @Override
@@ -80,7 +118,22 @@ public class TagCommand implements CommandExecutor, TabCompleter {
                 }
                 break;
             case "list":
-                handleListCommand(player);
+                handleListCommand(player, args);
+                break;
+            case "animation":
+                handleAnimationCommand(player, args);
+                break;
+            case "select":
+                handleSelectCommand(player, args);
+                break;
+            case "give":
+            case "take":
+                if (player.hasPermission("chattags.admin")) handleAdminGrant(player, args, subCommand.equals("give"));
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                break;
+            case "search":
+                if (player.hasPermission("chattags.admin")) handleSearchCommand(player, args);
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
                 break;
             case "clear-all":
                 if (player.hasPermission("chattags.admin")) handleClearAll(player);
@@ -90,6 +143,26 @@ public class TagCommand implements CommandExecutor, TabCompleter {
                 if (player.hasPermission("chattags.admin")) handleDisableAll(player);
                 else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
                 break;
+            case "reload":
+                if (player.hasPermission("chattags.admin")) handleReload(player);
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                break;
+            case "jobs":
+                if (player.hasPermission("chattags.admin")) handleJobs(player);
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                break;
+            case "cancel":
+                if (player.hasPermission("chattags.admin")) handleCancel(player, args);
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                break;
+            case "stats":
+                if (player.hasPermission("chattags.admin")) handleStats(player);
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                break;
+            case "export":
+                if (player.hasPermission("chattags.admin")) handleExport(player);
+                else player.sendMessage(ChatColor.RED + "You don't have permission to use this command!");
+                break;
             case "help":
                 sendHelpMessage(player);
                 break;
@@ -109,8 +182,8 @@ public class TagCommand implements CommandExecutor, TabCompleter {
             player.sendMessage(ChatColor.RED + "You don't have permission to set your tag!");
             return;
         }
-        if (!tagManager.canChangeTag(player)) {
-            player.sendMessage(ChatColor.RED + "You must wait " + tagManager.getRemainingCooldownSeconds(player) + "s before changing your tag again.");
+        if (!tagManager.canChangeTag(player, CooldownAction.SET)) {
+            player.sendMessage(ChatColor.RED + "You must wait " + tagManager.getRemainingCooldownSeconds(player, CooldownAction.SET) + "s before changing your tag again.");
             return;
         }
         if (args.length < 2) {
@@ -119,17 +192,32 @@ public class TagCommand implements CommandExecutor, TabCompleter {
         }
         // Join all arguments after "set" to allow spaces
         String tagText = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+        if (ColorCodec.hasCodes(tagText) && !player.hasPermission("chattags.colorcodes")) {
+            player.sendMessage(ChatColor.RED + "You don't have permission to use color codes in your tag!");
+            return;
+        }
+        // Checked before the rate limit so a typo does not cost a change
+        if (!tagManager.isValidTagText(tagText)) {
+            sendInvalidTagText(player);
+            return;
+        }
         
-        if (tagManager.setTagText(player, tagText)) {
-            PlayerTag tag = tagManager.getTag(player);
-            tag.setEnabled(true);
-            tagManager.saveAllTags();
-            player.sendMessage(ChatColor.GREEN + "Tag set to: " + tag.getFormattedTag());
-        } else {
-            player.sendMessage(ChatColor.RED + "Invalid tag text! Must be " + 
-                tagManager.getMinTagLength() + "-" + tagManager.getMaxTagLength() + 
-                " characters and contain only letters, numbers, and underscores.");
+        if (!acquireChange(player)) {
+            return;
         }
+        pipeline.submit(player, () -> tagManager.setTagText(player, tagText) ? tagManager.getTag(player) : null, tag -> {
+            if (tag != null) {
+                player.sendMessage(ChatColor.GREEN + "Tag set to: " + tag.getFormattedTag());
+            } else {
+                sendInvalidTagText(player);
+            }
+        });
+    }
+    
+    private void sendInvalidTagText(Player player) {
+        player.sendMessage(ChatColor.RED + "Invalid tag text! Must be " + 
+            tagManager.getMinTagLength() + "-" + tagManager.getMaxTagLength() + 
+            " characters and contain only letters, numbers, and underscores.");
     }
     
     /**
@@ -140,29 +228,55 @@ public class TagCommand implements CommandExecutor, TabCompleter {
             player.sendMessage(ChatColor.RED + "You don't have permission to change your tag color!");
             return;
         }
-        if (!tagManager.canChangeTag(player)) {
-            player.sendMessage(ChatColor.RED + "You must wait " + tagManager.getRemainingCooldownSeconds(player) + "s before changing your tag again.");
+        if (!tagManager.canChangeTag(player, CooldownAction.COLOR)) {
+            player.sendMessage(ChatColor.RED + "You must wait " + tagManager.getRemainingCooldownSeconds(player, CooldownAction.COLOR) + "s before changing your tag again.");
             return;
         }
         if (args.length < 2) {
             player.sendMessage(ChatColor.RED + "Usage: /tag color <color>");
             player.sendMessage(ChatColor.YELLOW + "Available colors: " + getAvailableColors());
+            if (player.hasPermission("chattags.color.rgb")) {
+                player.sendMessage(ChatColor.YELLOW + "Or a hex color like #ff8800, or a gradient like #ff0000:#0000ff");
+            }
             return;
         }
         
-        ChatColor color = tagManager.parseColor(args[1]);
+        TagColor color = tagManager.parseColor(args[1]);
         
         if (color == null) {
             player.sendMessage(ChatColor.RED + "Invalid color! Available colors: " + getAvailableColors());
             return;
         }
+        if (color.getNamed() == null && !player.hasPermission("chattags.color.rgb")) {
+            player.sendMessage(ChatColor.RED + "You don't have permission to use RGB colors or gradients!");
+            return;
+        }
         
-        if (tagManager.setTagColor(player, color)) {
-            PlayerTag tag = tagManager.getTag(player);
-            player.sendMessage(ChatColor.GREEN + "Tag color changed to: " + tag.getFormattedTag());
-        } else {
-            player.sendMessage(ChatColor.RED + "Failed to set tag color!");
+        if (!acquireChange(player)) {
+            return;
         }
+        pipeline.submit(player, () -> tagManager.setTagColor(player, color) ? tagManager.getTag(player) : null, tag -> {
+            if (tag != null) {
+                player.sendMessage(ChatColor.GREEN + "Tag color changed to: " + tag.getFormattedTag());
+            } else {
+                player.sendMessage(ChatColor.RED + "Failed to set tag color!");
+            }
+        });
+    }
+    
+    /**
+     * Takes a change from the rate limits, telling the player if refused
+     * 
+     * @return true if the change may go ahead
+     */
+    private boolean acquireChange(Player player) {
+        MutationLimiter.Result result = tagManager.acquireChange(player);
+        if (result == MutationLimiter.Result.PLAYER_LIMIT) {
+            player.sendMessage(ChatColor.RED + "You are changing your tag too often, wait " + tagManager.getRateLimitWaitSeconds(player) + "s.");
+        } else if (result == MutationLimiter.Result.SERVER_BUSY) {
+            player.sendMessage(ChatColor.RED + "Tag changes are paused while the server is busy, try again in a moment.");
+        }
+        return result == MutationLimiter.Result.ALLOWED;
     }
     
     /**
@@ -174,14 +288,16 @@ public class TagCommand implements CommandExecutor, TabCompleter {
             return;
         }
         
-        boolean enabled = tagManager.toggleTag(player);
-        
-        if (enabled) {
-            PlayerTag tag = tagManager.getTag(player);
-            player.sendMessage(ChatColor.GREEN + "Tag enabled: " + tag.getFormattedTag());
-        } else {
-            player.sendMessage(ChatColor.YELLOW + "Tag disabled!");
+        if (!acquireChange(player)) {
+            return;
         }
+        pipeline.submit(player, () -> tagManager.toggleTag(player) ? tagManager.getTag(player) : null, tag -> {
+            if (tag != null) {
+                player.sendMessage(ChatColor.GREEN + "Tag enabled: " + tag.getDisplayedTag(tagManager.getSettings().getCatalogue()));
+            } else {
+                player.sendMessage(ChatColor.YELLOW + "Tag disabled!");
+            }
+        });
     }
     
     /**
@@ -190,12 +306,13 @@ public class TagCommand implements CommandExecutor, TabCompleter {
     private void handlePreviewCommand(Player player) {
         PlayerTag tag = tagManager.getTag(player);
         
-        if (tag.getTagText().isEmpty()) {
+        if (tag.getTagText().isEmpty() && tag.getActive().length == 0) {
             player.sendMessage(ChatColor.YELLOW + "You don't have a tag set! Use /tag set <text> to create one.");
             return;
         }
         
-        player.sendMessage(ChatColor.GOLD + "Tag Preview: " + tag.getFormattedTag() + ChatColor.WHITE + player.getName() + ": Hello world!");
+        player.sendMessage(ChatColor.GOLD + "Tag Preview: " + tag.getDisplayedTag(tagManager.getSettings().getCatalogue())
+            + ChatColor.WHITE + player.getName() + ": Hello world!");
     }
     
     /**
@@ -206,30 +323,204 @@ public class TagCommand implements CommandExecutor, TabCompleter {
             player.sendMessage(ChatColor.RED + "You don't have permission to clear your tag!");
             return;
         }
-        if (!tagManager.canChangeTag(player)) {
-            player.sendMessage(ChatColor.RED + "You must wait " + tagManager.getRemainingCooldownSeconds(player) + "s before changing your tag again.");
+        if (!tagManager.canChangeTag(player, CooldownAction.CLEAR)) {
+            player.sendMessage(ChatColor.RED + "You must wait " + tagManager.getRemainingCooldownSeconds(player, CooldownAction.CLEAR) + "s before changing your tag again.");
             return;
         }
-        tagManager.clearTag(player);
-        player.sendMessage(ChatColor.GREEN + "Your tag has been cleared!");
+        if (!acquireChange(player)) {
+            return;
+        }
+        pipeline.submit(player, () -> {
+            tagManager.clearTag(player);
+            return null;
+        }, done -> player.sendMessage(ChatColor.GREEN + "Your tag has been cleared!"));
+    }
+    
+    /**
+     * Handles the animation subcommand: /tag animation [name|off]
+     */
+    private void handleAnimationCommand(Player player, String[] args) {
+        Map<String, TagAnimation> animations = tagManager.getSettings().getAnimations();
+        if (animations.isEmpty()) {
+            player.sendMessage(ChatColor.RED + "Tag animations are disabled on this server.");
+            return;
+        }
+        if (args.length < 2) {
+            String available = animations.keySet().stream()
+                .filter(name -> player.hasPermission(TagAnimation.PERMISSION_PREFIX + name))
+                .collect(Collectors.joining(", "));
+            player.sendMessage(ChatColor.RED + "Usage: /tag animation <name|off>");
+            player.sendMessage(ChatColor.YELLOW + "Available animations: " + (available.isEmpty() ? "none" : available));
+            return;
+        }
+        String name = args[1].toLowerCase(Locale.ROOT);
+        String animation = name.equals("off") ? "" : name;
+        if (!animation.isEmpty()) {
+            if (!animations.containsKey(animation)) {
+                player.sendMessage(ChatColor.RED + "Unknown animation: " + args[1]);
+                return;
+            }
+            if (!player.hasPermission(TagAnimation.PERMISSION_PREFIX + animation)) {
+                player.sendMessage(ChatColor.RED + "You don't have permission to use this animation!");
+                return;
+            }
+        }
+        if (!acquireChange(player)) {
+            return;
+        }
+        pipeline.submit(player, () -> tagManager.setTagAnimation(player, animation), changed -> {
+            if (!changed) {
+                player.sendMessage(ChatColor.RED + "Unknown animation: " + args[1]);
+            } else if (animation.isEmpty()) {
+                player.sendMessage(ChatColor.GREEN + "Tag animation turned off.");
+            } else {
+                player.sendMessage(ChatColor.GREEN + "Tag animation set to " + animation + ".");
+            }
+        });
+    }
+    
+    /**
+     * Handles the select subcommand: /tag select [tag...|custom]
+     */
+    private void handleSelectCommand(Player player, String[] args) {
+        if (!player.hasPermission("chattags.select")) {
+            player.sendMessage(ChatColor.RED + "You don't have permission to select tags!");
+            return;
+        }
+        TagCatalogue catalogue = tagManager.getSettings().getCatalogue();
+        PlayerTag current = tagManager.getTag(player);
+        if (args.length < 2) {
+            String owned = ownedTags(current)
+                .mapToObj(catalogue::get)
+                .filter(Objects::nonNull)
+                .map(entry -> entry.getKey() + " " + entry.getRendered().getFormattedTag())
+                .collect(Collectors.joining(ChatColor.WHITE + ", "));
+            player.sendMessage(ChatColor.RED + "Usage: /tag select <tag...|custom>");
+            player.sendMessage(ChatColor.YELLOW + "Your tags: " + ChatColor.WHITE + (owned.isEmpty() ? "none" : owned));
+            return;
+        }
+        if (args.length - 1 > catalogue.getMaxActive()) {
+            player.sendMessage(ChatColor.RED + "You can show at most " + catalogue.getMaxActive() + " tags at once.");
+            return;
+        }
+        int[] ids = new int[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("custom")) {
+                continue;
+            }
+            TagCatalogue.Entry entry = catalogue.find(args[i]);
+            if (entry == null || !TagManager.ownsTag(current, entry.getId())) {
+                player.sendMessage(ChatColor.RED + "You don't own the tag: " + args[i]);
+                return;
+            }
+            ids[i - 1] = entry.getId();
+        }
+        int[] selected = Arrays.stream(ids).distinct().toArray();
+        if (!acquireChange(player)) {
+            return;
+        }
+        pipeline.submit(player, () -> tagManager.selectTags(player, selected) ? tagManager.getTag(player) : null, tag -> {
+            if (tag != null) {
+                player.sendMessage(ChatColor.GREEN + "Now showing: " + tag.getDisplayedTag(tagManager.getSettings().getCatalogue()));
+            } else {
+                player.sendMessage(ChatColor.RED + "Could not select those tags, check /tag select.");
+            }
+        });
+    }
+    
+    /**
+     * @return Ids of the catalogue tags a player owns or is granted
+     */
+    private static IntStream ownedTags(PlayerTag tag) {
+        return IntStream.concat(Arrays.stream(tag.getOwned().ids()), Arrays.stream(tag.getGranted().ids())).distinct().sorted();
     }
     
     /**
      * Handles the list subcommand
      */
-    private void handleListCommand(Player player) {
-        List<String> lines = new ArrayList<>();
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            PlayerTag t = tagManager.getTag(p);
-            if (!t.getTagText().isEmpty()) {
-                lines.add("- " + p.getName() + ": " + t.getFormattedTag() + (t.isEnabled() ? ChatColor.GREEN + "(enabled)" : ChatColor.YELLOW + "(disabled)"));
+    private void handleListCommand(Player player, String[] args) {
+        int page = args.length >= 2 ? parsePage(args[1]) : 0;
+        if (page < 0) {
+            player.sendMessage(ChatColor.RED + "Usage: /tag list [page]");
+            return;
+        }
+        sendSearchPage(player, TagQuery.all(), page, "Players with tags", "/tag list");
+    }
+    
+    /**
+     * Handles the search subcommand: /tag search [text] [color:<color>] [enabled|disabled] [page]
+     */
+    private void handleSearchCommand(Player player, String[] args) {
+        String text = null;
+        ChatColor color = null;
+        Boolean enabled = null;
+        int page = 0;
+        StringBuilder criteria = new StringBuilder();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String lower = arg.toLowerCase();
+            if (lower.startsWith("color:")) {
+                TagColor parsed = tagManager.parseColor(arg.substring(6));
+                color = parsed == null ? null : parsed.getLegacy();
+                if (color == null) {
+                    player.sendMessage(ChatColor.RED + "Invalid color: " + arg.substring(6));
+                    return;
+                }
+            } else if (lower.equals("enabled") || lower.equals("disabled")) {
+                enabled = lower.equals("enabled");
+            } else if (i == args.length - 1 && i > 1 && parsePage(arg) >= 0) {
+                page = parsePage(arg);
+                continue;
+            } else if (text == null) {
+                text = arg;
+            } else {
+                player.sendMessage(ChatColor.RED + "Usage: /tag search [text] [color:<color>] [enabled|disabled] [page]");
+                return;
             }
+            criteria.append(' ').append(arg);
         }
-        if (lines.isEmpty()) {
-            player.sendMessage(ChatColor.YELLOW + "No players with tags online.");
-        } else {
-            player.sendMessage(ChatColor.GOLD + "Players with tags (online):");
-            lines.forEach(player::sendMessage);
+        sendSearchPage(player, new TagQuery(text, color, enabled), page, "Search results", "/tag search" + criteria);
+    }
+    
+    /**
+     * Runs a search off the main thread and sends the page to the player
+     */
+    private void sendSearchPage(Player player, TagQuery query, int page, String title, String command) {
+        pipeline.submit(player, () -> {
+            TagIndex.Page result = tagManager.searchTags(query, page, PAGE_SIZE);
+            TagCatalogue catalogue = tagManager.getSettings().getCatalogue();
+            List<String> lines = new ArrayList<>();
+            if (result == null) {
+                lines.add(ChatColor.YELLOW + "Tags are still being indexed, try again in a moment.");
+            } else if (result.getEntries().isEmpty()) {
+                lines.add(ChatColor.YELLOW + (page == 0 ? "No matching tags found." : "No more results."));
+            } else {
+                lines.add(ChatColor.GOLD + title + " (page " + (page + 1) + "):");
+                for (Map.Entry<UUID, PlayerTag> entry : result.getEntries()) {
+                    PlayerTag t = entry.getValue();
+                    String name = Bukkit.getOfflinePlayer(entry.getKey()).getName();
+                    lines.add("- " + (name != null ? name : entry.getKey().toString()) + ": " + t.getDisplayedTag(catalogue)
+                        + (t.isEnabled() ? ChatColor.GREEN + "(enabled)" : ChatColor.YELLOW + "(disabled)"));
+                }
+                if (result.hasNext()) {
+                    lines.add(ChatColor.GRAY + "Next page: " + command + " " + (page + 2));
+                }
+            }
+            return lines;
+        }, lines -> lines.forEach(player::sendMessage));
+    }
+    
+    /**
+     * Parses a one-based page number
+     * 
+     * @return Zero-based page, or -1 if invalid
+     */
+    private static int parsePage(String arg) {
+        try {
+            int page = Integer.parseInt(arg);
+            return page >= 1 ? page - 1 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
     
@@ -237,16 +528,115 @@ public class TagCommand implements CommandExecutor, TabCompleter {
      * Handles the clear-all subcommand
      */
     private void handleClearAll(Player player) {
-        int changed = tagManager.clearAllTags();
-        player.sendMessage(ChatColor.GREEN + "Cleared tags for " + changed + " players.");
+        BulkJob job = tagManager.clearAllTags();
+        announceJob(player, job, "Cleared tags for %d players.");
     }
     
     /**
      * Handles the disable-all subcommand
      */
     private void handleDisableAll(Player player) {
-        int changed = tagManager.disableAllTags();
-        player.sendMessage(ChatColor.YELLOW + "Disabled tags for " + changed + " players.");
+        BulkJob job = tagManager.disableAllTags();
+        announceJob(player, job, "Disabled tags for %d players.");
+    }
+    
+    /**
+     * Tells the player a job was started and reports back once it stops
+     * 
+     * @param doneMessage Message for a finished job, %d is the number of changed tags
+     */
+    private void announceJob(Player player, BulkJob job, String doneMessage) {
+        player.sendMessage(ChatColor.YELLOW + "Started job #" + job.getId() + " (" + job.getName() + "). "
+            + ChatColor.GRAY + "Use /tag jobs for progress or /tag cancel " + job.getId() + " to stop it.");
+        job.getCompletion().thenAccept(j -> pipeline.sync(() -> {
+            if (!player.isOnline()) {
+                return;
+            }
+            switch (j.getState()) {
+                case DONE:
+                    player.sendMessage(ChatColor.GREEN + String.format(doneMessage, j.getChanged()));
+                    break;
+                case CANCELLED:
+                    player.sendMessage(ChatColor.YELLOW + "Job #" + j.getId() + " cancelled after changing " + j.getChanged() + " tags.");
+                    break;
+                default:
+                    player.sendMessage(ChatColor.RED + "Job #" + j.getId() + " failed, see the console for details.");
+                    break;
+            }
+        }));
+    }
+    
+    /**
+     * Handles the jobs subcommand, listing running and recent bulk jobs
+     */
+    private void handleJobs(Player player) {
+        if (tagManager.getJobs().getJobs().isEmpty()) {
+            player.sendMessage(ChatColor.YELLOW + "No bulk jobs have run yet.");
+            return;
+        }
+        player.sendMessage(ChatColor.GOLD + "Bulk jobs:");
+        for (BulkJob job : tagManager.getJobs().getJobs()) {
+            String total = job.getTotal() < 0 ? "?" : String.valueOf(job.getTotal());
+            player.sendMessage("- #" + job.getId() + " " + job.getName() + ": " + ChatColor.YELLOW
+                + job.getState().name().toLowerCase() + ChatColor.WHITE + " " + job.getPercent() + "% ("
+                + job.getProcessed() + "/" + total + " scanned, " + job.getChanged() + " changed)");
+        }
+    }
+    
+    /**
+     * Handles the cancel subcommand
+     */
+    private void handleCancel(Player player, String[] args) {
+        BulkJob job = null;
+        if (args.length >= 2) {
+            try {
+                job = tagManager.getJobs().get(Integer.parseInt(args[1]));
+            } catch (NumberFormatException ignored) {}
+        }
+        if (job == null) {
+            player.sendMessage(ChatColor.RED + "Usage: /tag cancel <job id>, see /tag jobs");
+        } else if (job.isFinished()) {
+            player.sendMessage(ChatColor.YELLOW + "Job #" + job.getId() + " has already stopped.");
+        } else {
+            job.cancel();
+            player.sendMessage(ChatColor.YELLOW + "Cancelling job #" + job.getId() + "...");
+        }
+    }
+    
+    /**
+     * Handles the reload subcommand
+     */
+    private void handleReload(Player player) {
+        plugin.reloadConfig();
+        tagManager.reloadSettings();
+        player.sendMessage(ChatColor.GREEN + "ChatTags settings reloaded.");
+    }
+    
+    /**
+     * Handles the stats subcommand
+     */
+    private void handleStats(Player player) {
+        player.sendMessage(ChatColor.GOLD + "========== ChatTags Stats ==========");
+        tagManager.getMetrics().describe().forEach(player::sendMessage);
+        tagManager.describePressure().forEach(player::sendMessage);
+    }
+    
+    /**
+     * Handles the export subcommand, writing all tags to a YAML file
+     * off the main thread
+     */
+    private void handleExport(Player player) {
+        File file = new File(plugin.getDataFolder(), "playerdata-export.yml");
+        player.sendMessage(ChatColor.YELLOW + "Exporting tags...");
+        pipeline.submit(player, () -> {
+            try {
+                int count = tagManager.exportToYaml(file);
+                return ChatColor.GREEN + "Exported " + count + " tags to " + file.getName();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not export tags", e);
+                return ChatColor.RED + "Export failed, see the console for details.";
+            }
+        }, player::sendMessage);
     }
     
     /**
@@ -259,13 +649,26 @@ public class TagCommand implements CommandExecutor, TabCompleter {
         player.sendMessage(ChatColor.YELLOW + "/tag toggle" + ChatColor.WHITE + " - Toggle your tag on/off");
         player.sendMessage(ChatColor.YELLOW + "/tag preview" + ChatColor.WHITE + " - Preview your tag");
         player.sendMessage(ChatColor.YELLOW + "/tag clear" + ChatColor.WHITE + " - Clear your tag");
-        player.sendMessage(ChatColor.YELLOW + "/tag list" + ChatColor.WHITE + " - List players with tags");
+        player.sendMessage(ChatColor.YELLOW + "/tag list [page]" + ChatColor.WHITE + " - List players with tags");
+        if (!tagManager.getSettings().getAnimations().isEmpty()) {
+            player.sendMessage(ChatColor.YELLOW + "/tag animation <name|off>" + ChatColor.WHITE + " - Animate your tag");
+        }
+        if (!tagManager.getSettings().getCatalogue().isEmpty()) {
+            player.sendMessage(ChatColor.YELLOW + "/tag select <tag...|custom>" + ChatColor.WHITE + " - Choose which of your tags to show");
+        }
         if (player.hasPermission("chattags.admin")) {
             player.sendMessage(ChatColor.DARK_AQUA + "-- Admin --");
             player.sendMessage(ChatColor.YELLOW + "/tag set <player> <text>" + ChatColor.WHITE + " - Set tag for a player");
             player.sendMessage(ChatColor.YELLOW + "/tag clear <player>" + ChatColor.WHITE + " - Clear a player's tag");
+            player.sendMessage(ChatColor.YELLOW + "/tag give|take <player> <tag>" + ChatColor.WHITE + " - Give or take a catalogue tag");
             player.sendMessage(ChatColor.YELLOW + "/tag clear-all" + ChatColor.WHITE + " - Clear tags for all players");
             player.sendMessage(ChatColor.YELLOW + "/tag disable-all" + ChatColor.WHITE + " - Disable tags for all players");
+            player.sendMessage(ChatColor.YELLOW + "/tag reload" + ChatColor.WHITE + " - Reload the tag settings");
+            player.sendMessage(ChatColor.YELLOW + "/tag search [text] [color:<color>] [enabled|disabled] [page]" + ChatColor.WHITE + " - Search all stored tags");
+            player.sendMessage(ChatColor.YELLOW + "/tag jobs" + ChatColor.WHITE + " - Show progress of bulk jobs");
+            player.sendMessage(ChatColor.YELLOW + "/tag cancel <id>" + ChatColor.WHITE + " - Cancel a bulk job");
+            player.sendMessage(ChatColor.YELLOW + "/tag stats" + ChatColor.WHITE + " - Show timings and counters");
+            player.sendMessage(ChatColor.YELLOW + "/tag export" + ChatColor.WHITE + " - Export all tags to YAML");
         }
         player.sendMessage(ChatColor.GOLD + "===================================");
     }
@@ -292,20 +695,18 @@ public class TagCommand implements CommandExecutor, TabCompleter {
             return;
         }
         String tagText = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
-        if (tagManager.setTagText(target, tagText)) {
-            PlayerTag tag = tagManager.getTag(target);
-            tag.setEnabled(true);
-            tagManager.applyTagAppearance(target);
-            tagManager.saveAllTags();
-            sender.sendMessage(ChatColor.GREEN + "Set tag for " + target.getName() + ": " + tag.getFormattedTag());
-            target.sendMessage(ChatColor.YELLOW + "Your tag was set by an admin: " + tag.getFormattedTag());
-        } else {
-            sender.sendMessage(ChatColor.RED + "Invalid tag text! Must be " +
-                tagManager.getMinTagLength() + "-" + tagManager.getMaxTagLength() +
-                " characters and contain only allowed characters.");
-        }
+        pipeline.submit(target, () -> tagManager.setTagText(target, tagText) ? tagManager.getTag(target) : null, tag -> {
+            if (tag != null) {
+                sender.sendMessage(ChatColor.GREEN + "Set tag for " + target.getName() + ": " + tag.getFormattedTag());
+                target.sendMessage(ChatColor.YELLOW + "Your tag was set by an admin: " + tag.getFormattedTag());
+            } else {
+                sender.sendMessage(ChatColor.RED + "Invalid tag text! Must be " +
+                    tagManager.getMinTagLength() + "-" + tagManager.getMaxTagLength() +
+                    " characters and contain only allowed characters.");
+            }
+        });
     }
-
+    
     /**
      * Handles the admin clear subcommand
      */
@@ -315,40 +716,88 @@ public class TagCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage(ChatColor.RED + "Player not found: " + args[1]);
             return;
         }
-        tagManager.clearTag(target);
-        sender.sendMessage(ChatColor.GREEN + "Cleared tag for " + target.getName());
-        target.sendMessage(ChatColor.YELLOW + "Your tag was cleared by an admin.");
+        pipeline.submit(target, () -> {
+            tagManager.clearTag(target);
+            return null;
+        }, done -> {
+            sender.sendMessage(ChatColor.GREEN + "Cleared tag for " + target.getName());
+            target.sendMessage(ChatColor.YELLOW + "Your tag was cleared by an admin.");
+        });
     }
-
+    
+    /**
+     * Handles the admin give and take subcommands: /tag give|take <player> <tag>
+     */
+    private void handleAdminGrant(Player sender, String[] args, boolean give) {
+        if (args.length < 3) {
+            sender.sendMessage(ChatColor.RED + "Usage: /tag " + (give ? "give" : "take") + " <player> <tag>");
+            return;
+        }
+        Player target = Bukkit.getPlayerExact(args[1]);
+        if (target == null) {
+            sender.sendMessage(ChatColor.RED + "Player not found: " + args[1]);
+            return;
+        }
+        TagCatalogue.Entry entry = tagManager.getSettings().getCatalogue().find(args[2]);
+        if (entry == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown catalogue tag: " + args[2]);
+            return;
+        }
+        String formatted = entry.getRendered().getFormattedTag();
+        pipeline.submit(target, () -> give ? tagManager.grantTag(target, entry.getId()) : tagManager.revokeTag(target, entry.getId()), changed -> {
+            if (!changed) {
+                sender.sendMessage(ChatColor.YELLOW + target.getName() + (give ? " already owns " : " does not own ") + formatted);
+            } else if (give) {
+                sender.sendMessage(ChatColor.GREEN + "Gave " + formatted + ChatColor.GREEN + " to " + target.getName());
+                target.sendMessage(ChatColor.YELLOW + "You received the tag " + formatted + ChatColor.YELLOW + ", use /tag select " + entry.getKey() + " to show it.");
+            } else {
+                sender.sendMessage(ChatColor.GREEN + "Took " + formatted + ChatColor.GREEN + " from " + target.getName());
+            }
+        });
+    }
+    
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
-        List<String> completions = new ArrayList<>();
-        boolean isAdmin = sender.hasPermission("chattags.admin");
-
+        String last = args[args.length - 1].toLowerCase(Locale.ROOT);
         if (args.length == 1) {
-            completions.addAll(Arrays.asList("set", "color", "toggle", "preview", "clear", "list", "clear-all", "disable-all", "help"));
-            return completions.stream()
-                .filter(s -> s.startsWith(args[0].toLowerCase()))
-                .collect(Collectors.toList());
+            return SUBCOMMANDS.complete(last);
+        }
+        
+        String sub = args[0].toLowerCase(Locale.ROOT);
+        boolean isAdmin = sender.hasPermission("chattags.admin");
+        if (isAdmin && sub.equals("search")) {
+            return SEARCH_OPTIONS.complete(last);
         }
-
         if (args.length == 2) {
-            String sub = args[0].toLowerCase();
-            if ((sub.equals("color") || sub.equals("colour"))) {
-                return Arrays.stream(ChatColor.values())
-                    .filter(ChatColor::isColor)
-                    .map(c -> c.name().toLowerCase())
-                    .filter(s -> s.startsWith(args[1].toLowerCase()))
-                    .collect(Collectors.toList());
+            if (sub.equals("color") || sub.equals("colour")) {
+                return COLORS.complete(last);
+            }
+            if (isAdmin && (sub.equals("set") || sub.equals("clear") || sub.equals("give") || sub.equals("take"))) {
+                return playerNames.complete(last);
             }
-            if (isAdmin && (sub.equals("set") || sub.equals("clear"))) {
-                return Bukkit.getOnlinePlayers().stream()
-                    .map(Player::getName)
-                    .filter(n -> n.toLowerCase().startsWith(args[1].toLowerCase()))
+            if (sub.equals("animation")) {
+                // Only a handful of animations, a filter is enough
+                return Stream.concat(Stream.of("off"), tagManager.getSettings().getAnimations().keySet().stream()
+                        .filter(name -> sender.hasPermission(TagAnimation.PERMISSION_PREFIX + name)))
+                    .filter(name -> name.startsWith(last))
+                    .sorted()
                     .collect(Collectors.toList());
             }
         }
-
-        return completions;
+        if (sub.equals("select") && sender instanceof Player) {
+            TagSettings settings = tagManager.getSettings();
+            PlayerTag tag = tagManager.getTag((Player) sender);
+            List<String> keys = settings.getCatalogueCompletions().complete(last);
+            keys.removeIf(key -> !TagManager.ownsTag(tag, settings.getCatalogue().find(key).getId()));
+            if ("custom".startsWith(last)) {
+                keys.add(0, "custom");
+            }
+            return keys;
+        }
+        if (isAdmin && args.length == 3 && (sub.equals("give") || sub.equals("take"))) {
+            return tagManager.getSettings().getCatalogueCompletions().complete(last);
+        }
+        
+        return Collections.emptyList();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,134 @@
+package com.johannfullhd.chattags.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Chat format from config.yml, parsed once into segments.
+ * <p>
+ * Supports the placeholders {@code {tag}}, {@code {name}} and
+ * {@code {message}}; everything else is literal text with {@code &} color
+ * codes. Rendering produces a format string for
+ * {@code AsyncPlayerChatEvent#setFormat}: the name and message become
+ * {@code %1$s} and {@code %2$s}, and literal {@code %} signs are escaped.
+ * The tag passed in must already be escaped, see
+ * {@link com.johannfullhd.chattags.models.RenderedTag#getEscapedTag()}.
+ */
+public final class ChatTemplate {
+    
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+    
+    /** Template matching the classic format, the tag directly before {@code <name>} */
+    public static final String DEFAULT_FORMAT = "{tag}<{name}> {message}";
+    
+    public static final ChatTemplate DEFAULT = parse(DEFAULT_FORMAT);
+    
+    private static final int LITERAL = 0;
+    private static final int TAG = 1;
+    private static final int NAME = 2;
+    private static final int MESSAGE = 3;
+    
+    private final String source;
+    private final int[] kinds;
+    private final String[] texts;
+    private final String untaggedFormat;
+    
+    private ChatTemplate(String source, int[] kinds, String[] texts) {
+        this.source = source;
+        this.kinds = kinds;
+        this.texts = texts;
+        this.untaggedFormat = render("");
+    }
+    
+    /**
+     * Parses a template. Unknown placeholders are kept as literal text.
+     * A space directly after {@code {tag}} belongs to the tag, so it is
+     * left out together with an empty tag.
+     *
+     * @param template The template from the config
+     * @return The parsed template
+     */
+    public static ChatTemplate parse(String template) {
+        List<Integer> kinds = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            int kind = placeholderAt(template, i);
+            if (kind == LITERAL) {
+                char c = template.charAt(i++);
+                if (c == '%') {
+                    literal.append('%');
+                }
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                kinds.add(LITERAL);
+                texts.add(ChatColor.translateAlternateColorCodes('&', literal.toString()));
+                literal.setLength(0);
+            }
+            i = template.indexOf('}', i) + 1;
+            String suffix = "";
+            if (kind == TAG && i < template.length() && template.charAt(i) == ' ') {
+                suffix = " ";
+                i++;
+            }
+            kinds.add(kind);
+            texts.add(kind == NAME ? "%1$s" : kind == MESSAGE ? "%2$s" : suffix);
+        }
+        if (literal.length() > 0) {
+            kinds.add(LITERAL);
+            texts.add(ChatColor.translateAlternateColorCodes('&', literal.toString()));
+        }
+        return new ChatTemplate(template, kinds.stream().mapToInt(Integer::intValue).toArray(), texts.toArray(new String[0]));
+    }
+    
+    private static int placeholderAt(String template, int index) {
+        if (template.startsWith("{tag}", index)) {
+            return TAG;
+        }
+        if (template.startsWith("{name}", index)) {
+            return NAME;
+        }
+        if (template.startsWith("{message}", index)) {
+            return MESSAGE;
+        }
+        return LITERAL;
+    }
+    
+    /**
+     * Renders the format for a tag into the calling thread's builder
+     *
+     * @param escapedTag The formatted tag with {@code %} escaped, or empty
+     * @return The format string
+     */
+    public String render(String escapedTag) {
+        StringBuilder builder = BUILDER.get();
+        builder.setLength(0);
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] != TAG) {
+                builder.append(texts[i]);
+            } else if (!escapedTag.isEmpty()) {
+                builder.append(escapedTag).append(texts[i]);
+            }
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * @return The format for players without a visible tag
+     */
+    public String getUntaggedFormat() {
+        return untaggedFormat;
+    }
+    
+    /**
+     * @return The template as written in the config
+     */
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,222 @@
+package com.johannfullhd.chattags.config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+import com.johannfullhd.chattags.animation.TagAnimation;
+import com.johannfullhd.chattags.commands.CompletionTable;
+import com.johannfullhd.chattags.cooldown.CooldownAction;
+import com.johannfullhd.chattags.models.ColorCodec;
+import com.johannfullhd.chattags.models.TagCatalogue;
+
+/**
+ * Immutable snapshot of the tag settings from config.yml.
+ * <p>
+ * Built once on enable and on every reload, so validation and cooldown
+ * checks never go back to the config or recompile the pattern.
+ */
+public final class TagSettings {
+    
+    private static final String DEFAULT_PATTERN = "[a-zA-Z0-9_\\s]+";
+    
+    private final int minLength;
+    private final int maxLength;
+    private final Pattern allowedPattern;
+    private final ChatColor defaultColor;
+    private final int changeCooldownSeconds;
+    private final long[] cooldownMillis;
+    private final ChatTemplate chatTemplate;
+    private final Map<String, TagAnimation> animations;
+    private final boolean allowColorCodes;
+    private final TagCatalogue catalogue;
+    private final CompletionTable catalogueCompletions;
+    private final int rateLimitBurst;
+    private final long rateLimitRefillMillis;
+    
+    private TagSettings(int minLength, int maxLength, Pattern allowedPattern, ChatColor defaultColor,
+                        int changeCooldownSeconds, long[] cooldownMillis, ChatTemplate chatTemplate,
+                        Map<String, TagAnimation> animations, boolean allowColorCodes, TagCatalogue catalogue,
+                        int rateLimitBurst, long rateLimitRefillMillis) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.allowedPattern = allowedPattern;
+        this.defaultColor = defaultColor;
+        this.changeCooldownSeconds = changeCooldownSeconds;
+        this.cooldownMillis = cooldownMillis;
+        this.chatTemplate = chatTemplate;
+        this.animations = animations;
+        this.allowColorCodes = allowColorCodes;
+        this.catalogue = catalogue;
+        this.catalogueCompletions = new CompletionTable(catalogue.getEntries().stream()
+            .map(TagCatalogue.Entry::getKey)
+            .toArray(String[]::new));
+        this.rateLimitBurst = rateLimitBurst;
+        this.rateLimitRefillMillis = rateLimitRefillMillis;
+    }
+    
+    /**
+     * Reads the settings from the plugin config, falling back to the
+     * defaults for invalid values
+     * 
+     * @param config The plugin config
+     * @param logger Logger for invalid values
+     * @return The settings snapshot
+     */
+    public static TagSettings fromConfig(ConfigurationSection config, Logger logger) {
+        int minLength = config.getInt("tag-settings.min-length", 1);
+        int maxLength = config.getInt("tag-settings.max-length", 16);
+        int cooldown = Math.max(0, config.getInt("tag-settings.change-cooldown-seconds", 30));
+        
+        String patternString = config.getString("tag-settings.allowed-pattern", DEFAULT_PATTERN);
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(patternString);
+        } catch (PatternSyntaxException e) {
+            logger.warning("Invalid tag-settings.allowed-pattern '" + patternString + "', using default");
+            pattern = Pattern.compile(DEFAULT_PATTERN);
+        }
+        
+        String colorName = config.getString("tag-settings.default-color", "GRAY");
+        ChatColor color;
+        try {
+            color = ChatColor.valueOf(colorName.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            color = null;
+        }
+        if (color == null || !color.isColor()) {
+            logger.warning("Invalid tag-settings.default-color '" + colorName + "', using GRAY");
+            color = ChatColor.GRAY;
+        }
+        
+        // Per-action cooldowns default to the shared change cooldown
+        long[] cooldownMillis = new long[CooldownAction.values().length];
+        for (CooldownAction action : CooldownAction.values()) {
+            int seconds = config.getInt("tag-settings.cooldowns." + action.getConfigKey(), cooldown);
+            cooldownMillis[action.ordinal()] = Math.max(0, seconds) * 1000L;
+        }
+        
+        String format = config.getString("chat.format", ChatTemplate.DEFAULT_FORMAT);
+        ChatTemplate template = format.equals(ChatTemplate.DEFAULT_FORMAT)
+            ? ChatTemplate.DEFAULT : ChatTemplate.parse(format);
+        
+        Map<String, TagAnimation> animations = new LinkedHashMap<>();
+        ConfigurationSection animationSection = config.getConfigurationSection("animations");
+        if (config.getBoolean("features.enable-animations", false) && animationSection != null) {
+            for (String name : animationSection.getKeys(false)) {
+                ConfigurationSection section = animationSection.getConfigurationSection(name);
+                TagAnimation animation = section == null ? null
+                    : TagAnimation.fromConfig(name.toLowerCase(Locale.ROOT), section, logger);
+                if (animation != null) {
+                    animations.put(animation.getName(), animation);
+                }
+            }
+        }
+        
+        return new TagSettings(minLength, maxLength, pattern, color, cooldown, cooldownMillis, template,
+            Collections.unmodifiableMap(animations), config.getBoolean("features.allow-color-codes", false),
+            TagCatalogue.fromConfig(config.getConfigurationSection("catalogue"), logger),
+            Math.max(0, config.getInt("tag-settings.rate-limit.burst", 3)),
+            Math.max(0L, Math.round(config.getDouble("tag-settings.rate-limit.refill-seconds", 10.0) * 1000.0)));
+    }
+    
+    /**
+     * Validates tag text against the length limits and allowed pattern.
+     * {@code &} codes are only allowed when enabled and do not count
+     * towards the length or the pattern.
+     * 
+     * @param text The text to validate
+     * @return true if valid
+     */
+    public boolean isValidTagText(String text) {
+        boolean codes = ColorCodec.hasCodes(text);
+        if (codes && !allowColorCodes) {
+            return false;
+        }
+        String plain = codes ? ColorCodec.strip(text) : text;
+        int length = plain.length();
+        return length >= minLength && length <= maxLength && allowedPattern.matcher(plain).matches();
+    }
+    
+    public int getMinLength() {
+        return minLength;
+    }
+    
+    public int getMaxLength() {
+        return maxLength;
+    }
+    
+    public Pattern getAllowedPattern() {
+        return allowedPattern;
+    }
+    
+    public ChatColor getDefaultColor() {
+        return defaultColor;
+    }
+    
+    public int getChangeCooldownSeconds() {
+        return changeCooldownSeconds;
+    }
+    
+    public long getCooldownMillis(CooldownAction action) {
+        return cooldownMillis[action.ordinal()];
+    }
+    
+    /**
+     * @return Tag changes a player can make in a row, 0 if not limited
+     */
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+    
+    /**
+     * @return Time until a player earns another tag change
+     */
+    public long getRateLimitRefillMillis() {
+        return rateLimitRefillMillis;
+    }
+    
+    public boolean isAllowColorCodes() {
+        return allowColorCodes;
+    }
+    
+    public ChatTemplate getChatTemplate() {
+        return chatTemplate;
+    }
+    
+    /**
+     * @param name Animation name, lowercase
+     * @return The animation, or null if unknown or animations are disabled
+     */
+    public TagAnimation getAnimation(String name) {
+        return animations.get(name);
+    }
+    
+    /**
+     * @return Configured animations by name, empty if animations are disabled
+     */
+    public Map<String, TagAnimation> getAnimations() {
+        return animations;
+    }
+    
+    /**
+     * @return The tag catalogue, a new instance after every reload
+     */
+    public TagCatalogue getCatalogue() {
+        return catalogue;
+    }
+    
+    /**
+     * @return Keys of all catalogue tags, for tab completion
+     */
+    public CompletionTable getCatalogueCompletions() {
+        return catalogueCompletions;
+    }
+}
@@ -0,0 +1,23 @@
+package com.johannfullhd.chattags.cooldown;
+
+/**
+ * Tag changes that have their own cooldown
+ */
+public enum CooldownAction {
+    SET("set"),
+    COLOR("color"),
+    CLEAR("clear");
+    
+    private final String configKey;
+    
+    CooldownAction(String configKey) {
+        this.configKey = configKey;
+    }
+    
+    /**
+     * @return Key of this action below tag-settings.cooldowns
+     */
+    public String getConfigKey() {
+        return configKey;
+    }
+}
@@ -0,0 +1,293 @@
+package com.johannfullhd.chattags.cooldown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Tracks cooldown expiry times per player and action.
+ * <p>
+ * Entries live in open-addressing tables keyed by the two halves of the
+ * UUID, with one primitive expiry per action, so nothing is boxed. The
+ * tables are split into independently locked shards. Entries whose
+ * cooldowns have all passed are swept out as the shard is written to, so
+ * memory only grows with players that are currently on cooldown.
+ */
+public class CooldownTracker {
+    
+    private static final int SHARDS = 16;
+    private static final int ACTIONS = CooldownAction.values().length;
+    private static final int FILE_MAGIC = 0x43544344; // "CTCD"
+    private static final int FILE_VERSION = 1;
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000L;
+    
+    private final Shard[] shards = new Shard[SHARDS];
+    
+    public CooldownTracker() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+    
+    /**
+     * Gets the time left on a cooldown
+     * 
+     * @param uuid The player's UUID
+     * @param action The action
+     * @param now Current time in millis
+     * @return Remaining millis, 0 if not on cooldown
+     */
+    public long getRemainingMillis(UUID uuid, CooldownAction action, long now) {
+        long hi = uuid.getMostSignificantBits();
+        long lo = uuid.getLeastSignificantBits();
+        long expiry = shardFor(hi, lo).getExpiry(hi, lo, action.ordinal());
+        return Math.max(0L, expiry - now);
+    }
+    
+    /**
+     * Starts a cooldown
+     * 
+     * @param uuid The player's UUID
+     * @param action The action
+     * @param durationMillis Length of the cooldown
+     * @param now Current time in millis
+     */
+    public void start(UUID uuid, CooldownAction action, long durationMillis, long now) {
+        if (durationMillis <= 0) {
+            return;
+        }
+        long hi = uuid.getMostSignificantBits();
+        long lo = uuid.getLeastSignificantBits();
+        shardFor(hi, lo).setExpiry(hi, lo, action.ordinal(), now + durationMillis, now);
+    }
+    
+    /**
+     * @return Number of players with at least one tracked cooldown
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.size;
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Writes all running cooldowns to a file, replacing it atomically
+     * 
+     * @param file Target file
+     * @param now Current time in millis
+     * @throws IOException if the file could not be written
+     */
+    public void save(File file, long now) throws IOException {
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(ACTIONS);
+            for (Shard shard : shards) {
+                shard.writeTo(out, now);
+            }
+            // End marker, a UUID cannot be all zero bits from a player
+            out.writeLong(0L);
+            out.writeLong(0L);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Restores cooldowns written by {@link #save(File, long)}, skipping
+     * those that expired while the server was down
+     * 
+     * @param file Source file, ignored if missing
+     * @param now Current time in millis
+     * @throws IOException if the file is unreadable or not a cooldown file
+     */
+    public void load(File file, long now) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a cooldown file: " + file.getName());
+            }
+            int actions = in.readInt();
+            while (true) {
+                long hi = in.readLong();
+                long lo = in.readLong();
+                if (hi == 0L && lo == 0L) {
+                    break;
+                }
+                for (int action = 0; action < actions; action++) {
+                    long expiry = in.readLong();
+                    if (action < ACTIONS && expiry > now) {
+                        shardFor(hi, lo).setExpiry(hi, lo, action, expiry, now);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated cooldown file: " + file.getName(), e);
+        }
+    }
+    
+    private Shard shardFor(long hi, long lo) {
+        return shards[(int) (mix(hi, lo) >>> 60) & (SHARDS - 1)];
+    }
+    
+    private static long mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+    
+    /**
+     * Linear-probing table of UUID halves to per-action expiry times
+     */
+    private static final class Shard {
+        private static final int MIN_CAPACITY = 16;
+        
+        private long[] his = new long[MIN_CAPACITY];
+        private long[] los = new long[MIN_CAPACITY];
+        private long[] expiries = new long[MIN_CAPACITY * ACTIONS];
+        private boolean[] used = new boolean[MIN_CAPACITY];
+        private int size;
+        private long nextSweepAt;
+        
+        synchronized long getExpiry(long hi, long lo, int action) {
+            int slot = find(hi, lo);
+            return slot < 0 ? 0L : expiries[slot * ACTIONS + action];
+        }
+        
+        synchronized void setExpiry(long hi, long lo, int action, long expiry, long now) {
+            if (now >= nextSweepAt) {
+                sweep(now);
+                nextSweepAt = now + SWEEP_INTERVAL_MILLIS;
+            }
+            int slot = find(hi, lo);
+            if (slot < 0) {
+                if ((size + 1) * 4 > used.length * 3) {
+                    resize(used.length * 2);
+                }
+                slot = insert(hi, lo);
+            }
+            expiries[slot * ACTIONS + action] = expiry;
+        }
+        
+        private int find(long hi, long lo) {
+            int mask = used.length - 1;
+            for (int slot = (int) mix(hi, lo) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (his[slot] == hi && los[slot] == lo) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        
+        private int insert(long hi, long lo) {
+            int mask = used.length - 1;
+            int slot = (int) mix(hi, lo) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            his[slot] = hi;
+            los[slot] = lo;
+            for (int a = 0; a < ACTIONS; a++) {
+                expiries[slot * ACTIONS + a] = 0L;
+            }
+            size++;
+            return slot;
+        }
+        
+        /**
+         * Drops entries whose cooldowns have all passed and shrinks the
+         * table once it is mostly empty
+         */
+        private void sweep(long now) {
+            int live = 0;
+            for (int slot = 0; slot < used.length; slot++) {
+                if (used[slot] && isLive(slot, now)) {
+                    live++;
+                }
+            }
+            if (live == size) {
+                return;
+            }
+            // Keep at most half full after the sweep, never grow here
+            int capacity = MIN_CAPACITY;
+            while (capacity < live * 2) {
+                capacity *= 2;
+            }
+            rebuild(Math.min(capacity, used.length), now);
+        }
+        
+        private boolean isLive(int slot, long now) {
+            for (int a = 0; a < ACTIONS; a++) {
+                if (expiries[slot * ACTIONS + a] > now) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private void resize(int capacity) {
+            rebuild(capacity, Long.MIN_VALUE);
+        }
+        
+        private void rebuild(int capacity, long now) {
+            long[] oldHis = his;
+            long[] oldLos = los;
+            long[] oldExpiries = expiries;
+            boolean[] oldUsed = used;
+            his = new long[capacity];
+            los = new long[capacity];
+            expiries = new long[capacity * ACTIONS];
+            used = new boolean[capacity];
+            size = 0;
+            for (int old = 0; old < oldUsed.length; old++) {
+                if (!oldUsed[old]) {
+                    continue;
+                }
+                boolean live = false;
+                for (int a = 0; a < ACTIONS && !live; a++) {
+                    live = oldExpiries[old * ACTIONS + a] > now;
+                }
+                if (!live) {
+                    continue;
+                }
+                int slot = insert(oldHis[old], oldLos[old]);
+                System.arraycopy(oldExpiries, old * ACTIONS, expiries, slot * ACTIONS, ACTIONS);
+            }
+        }
+        
+        synchronized void writeTo(DataOutputStream out, long now) throws IOException {
+            for (int slot = 0; slot < used.length; slot++) {
+                if (!used[slot] || !isLive(slot, now)) {
+                    continue;
+                }
+                out.writeLong(his[slot]);
+                out.writeLong(los[slot]);
+                for (int a = 0; a < ACTIONS; a++) {
+                    out.writeLong(expiries[slot * ACTIONS + a]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.johannfullhd.chattags.cooldown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.bukkit.ChatColor;
+
+import com.johannfullhd.chattags.metrics.MetricsRegistry;
+import com.johannfullhd.chattags.metrics.RateMeter;
+
+/**
+ * Rate limits tag changes on top of the fixed cooldowns.
+ * <p>
+ * Every player has a token bucket of {@code burst} changes that refills one
+ * change at a time, and all changes share a server-wide bucket of one
+ * second's worth of the global limit. Buckets are held as the time at which
+ * they are full again, so a bucket is a single long. A player's bucket is
+ * kept until it is full again, also after they leave, so relogging does
+ * not refill it; full buckets are swept out once a minute. From these and the
+ * chat rate the limiter works out the current {@link Pressure}, which the
+ * plugin uses to merge saves and spread tab list updates over more ticks.
+ */
+public class MutationLimiter {
+    
+    /**
+     * Outcome of {@link #acquire}
+     */
+    public enum Result {
+        ALLOWED,
+        /** The player's bucket is empty */
+        PLAYER_LIMIT,
+        /** The server-wide bucket is empty */
+        SERVER_BUSY
+    }
+    
+    /**
+     * Load on the plugin
+     */
+    public enum Pressure {
+        NORMAL,
+        /** Changes or chat at half the limit or more, work is deferred */
+        HIGH,
+        /** The global limit is reached, changes are refused */
+        SATURATED
+    }
+    
+    private static final long SWEEP_INTERVAL_NANOS = 60_000_000_000L;
+    
+    private final int globalPerSecond;
+    private final long globalInterval;
+    private final long globalTolerance;
+    private final long chatFloodPerSecond;
+    private final LongSupplier chatPerSecond;
+    private final AtomicLong globalFullAt = new AtomicLong(System.nanoTime());
+    private final Map<UUID, Long> playerFullAt = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAt = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+    private final RateMeter changes = new RateMeter();
+    private final LongAdder playerRejections;
+    private final LongAdder globalRejections;
+    
+    /**
+     * @param globalPerSecond Tag changes per second across the server, 0 for
+     *                        no limit
+     * @param chatFloodPerSecond Chat messages per second from which the
+     *                           server counts as busy, 0 to ignore chat
+     * @param chatPerSecond Current chat messages per second
+     * @param registry Registry for the limiter's instruments
+     */
+    public MutationLimiter(int globalPerSecond, int chatFloodPerSecond, LongSupplier chatPerSecond,
+                           MetricsRegistry registry) {
+        this.globalPerSecond = Math.max(0, globalPerSecond);
+        this.globalInterval = this.globalPerSecond == 0 ? 0L : 1_000_000_000L / this.globalPerSecond;
+        this.globalTolerance = globalInterval * Math.max(0, this.globalPerSecond - 1);
+        this.chatFloodPerSecond = Math.max(0, chatFloodPerSecond);
+        this.chatPerSecond = chatPerSecond;
+        this.playerRejections = registry.counter("chattags_rate_limited_total",
+            "Tag changes refused because the player changed too often");
+        this.globalRejections = registry.counter("chattags_server_busy_total",
+            "Tag changes refused because of the server-wide limit");
+        registry.gauge("chattags_changes_per_second", "Tag changes in the last second", changes::perSecond);
+        registry.gauge("chattags_pressure", "0 normal, 1 high, 2 saturated", () -> getPressure().ordinal());
+    }
+    
+    /**
+     * Takes one change from the player's and the server's bucket
+     *
+     * @param uuid The player's UUID
+     * @param burst Changes a player can make in a row, 0 for no limit
+     * @param refillMillis Time until a player earns another change
+     * @param bypass Whether the player skips both limits; the change still
+     *               counts towards the server's load
+     * @return Whether the change may go ahead
+     */
+    public Result acquire(UUID uuid, int burst, long refillMillis, boolean bypass) {
+        long now = System.nanoTime();
+        if (bypass) {
+            take(globalFullAt, now, globalInterval, Long.MAX_VALUE);
+            changes.mark();
+            return Result.ALLOWED;
+        }
+        if (globalInterval > 0 && !take(globalFullAt, now, globalInterval, globalTolerance)) {
+            globalRejections.increment();
+            return Result.SERVER_BUSY;
+        }
+        if (burst > 0 && refillMillis > 0) {
+            sweep(now);
+            long interval = refillMillis * 1_000_000L;
+            long tolerance = interval * (burst - 1);
+            boolean[] allowed = new boolean[1];
+            playerFullAt.compute(uuid, (key, fullAt) -> {
+                long base = fullAt == null ? now : Math.max(fullAt, now);
+                allowed[0] = base - now <= tolerance;
+                return allowed[0] ? base + interval : fullAt;
+            });
+            if (!allowed[0]) {
+                // Gives the server-wide change back
+                globalFullAt.addAndGet(-globalInterval);
+                playerRejections.increment();
+                return Result.PLAYER_LIMIT;
+            }
+        }
+        changes.mark();
+        return Result.ALLOWED;
+    }
+    
+    /**
+     * Drops full buckets, at most once per sweep interval
+     */
+    private void sweep(long now) {
+        long due = nextSweepAt.get();
+        if (now - due >= 0 && nextSweepAt.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            playerFullAt.values().removeIf(fullAt -> fullAt - now <= 0);
+        }
+    }
+    
+    private static boolean take(AtomicLong fullAt, long now, long interval, long tolerance) {
+        while (true) {
+            long current = fullAt.get();
+            long base = Math.max(current, now);
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, base + interval)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * @param uuid The player's UUID
+     * @param burst Changes a player can make in a row
+     * @param refillMillis Time until a player earns another change
+     * @return Milliseconds until the player may change again, 0 if now
+     */
+    public long getWaitMillis(UUID uuid, int burst, long refillMillis) {
+        Long fullAt = playerFullAt.get(uuid);
+        if (fullAt == null || burst <= 0) {
+            return 0L;
+        }
+        long wait = fullAt - System.nanoTime() - refillMillis * 1_000_000L * (burst - 1);
+        return wait <= 0 ? 0L : (wait + 999_999L) / 1_000_000L;
+    }
+    
+    /**
+     * @return The current load, cheap enough to check on every change
+     */
+    public Pressure getPressure() {
+        if (globalInterval > 0) {
+            long backlog = globalFullAt.get() - System.nanoTime();
+            if (backlog > globalTolerance) {
+                return Pressure.SATURATED;
+            }
+            if (backlog > globalTolerance / 2) {
+                return Pressure.HIGH;
+            }
+        }
+        if (chatFloodPerSecond > 0 && chatPerSecond.getAsLong() >= chatFloodPerSecond) {
+            return Pressure.HIGH;
+        }
+        return Pressure.NORMAL;
+    }
+    
+    public boolean isUnderPressure() {
+        return getPressure() != Pressure.NORMAL;
+    }
+    
+    /**
+     * Summarizes the load for /tag stats
+     *
+     * @return Chat lines
+     */
+    public List<String> describe() {
+        Pressure pressure = getPressure();
+        ChatColor color = pressure == Pressure.NORMAL ? ChatColor.GREEN
+            : pressure == Pressure.HIGH ? ChatColor.GOLD : ChatColor.RED;
+        List<String> lines = new ArrayList<>();
+        lines.add(ChatColor.YELLOW + "Pressure: " + color + pressure
+            + ChatColor.GRAY + " (" + changes.perSecond() + " changes/s of "
+            + (globalPerSecond == 0 ? "unlimited" : String.valueOf(globalPerSecond))
+            + ", " + chatPerSecond.getAsLong() + " chat/s)");
+        lines.add(ChatColor.YELLOW + "Rate limited: " + ChatColor.WHITE + playerRejections.sum()
+            + ChatColor.GRAY + " by player, " + globalRejections.sum() + " by server");
+        return lines;
+    }
+}
@@ -0,0 +1,193 @@
+package com.johannfullhd.chattags.display;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.johannfullhd.chattags.animation.AnimationScheduler;
+import com.johannfullhd.chattags.config.TagSettings;
+import com.johannfullhd.chattags.metrics.TagMetrics;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.RenderedTag;
+import com.johannfullhd.chattags.models.TagCatalogue;
+
+/**
+ * Applies tags to the tab list and the player's nametag.
+ * <p>
+ * Remembers what was last sent per player and skips anything unchanged,
+ * since every team or list name change is a packet to every client. Bulk
+ * updates are queued and spread over several ticks. Animated tags show
+ * the current frame of their {@link AnimationScheduler} track and are
+ * repainted when it moves on; players showing catalogue tags are never
+ * animated. Main thread only.
+ */
+public class AppearanceUpdater {
+    
+    private final Plugin plugin;
+    private final Function<Player, PlayerTag> tagLookup;
+    private final NametagRenderer nametags;
+    private final int updatesPerTick;
+    private final long tickBudgetNanos;
+    private final TagMetrics metrics;
+    private final Supplier<TagSettings> settings;
+    private final AnimationScheduler animations;
+    private final Map<UUID, Applied> applied = new HashMap<>();
+    private final Set<UUID> queued = new LinkedHashSet<>();
+    private BukkitTask drainTask;
+    
+    /**
+     * @param plugin The owning plugin, used for scheduling
+     * @param tagLookup Resolves a player's current tag
+     * @param nametags Renders the tag above the player's head
+     * @param updatesPerTick Maximum number of queued players applied per tick
+     * @param tickBudgetMillis Maximum time spent on queued players per tick
+     * @param metrics Records update counts and timings
+     * @param settings The current settings, for animations and the catalogue
+     */
+    public AppearanceUpdater(Plugin plugin, Function<Player, PlayerTag> tagLookup, NametagRenderer nametags,
+            int updatesPerTick, double tickBudgetMillis, TagMetrics metrics, Supplier<TagSettings> settings) {
+        this.plugin = plugin;
+        this.tagLookup = tagLookup;
+        this.nametags = nametags;
+        this.updatesPerTick = Math.max(1, updatesPerTick);
+        this.tickBudgetNanos = (long) (Math.max(0.1, tickBudgetMillis) * 1_000_000L);
+        this.metrics = metrics;
+        this.settings = settings;
+        this.animations = new AnimationScheduler(plugin, name -> settings.get().getAnimation(name), this::apply);
+    }
+    
+    /**
+     * Applies a player's tag right away, sending only what changed
+     * 
+     * @param player The player
+     */
+    public void apply(Player player) {
+        long start = System.nanoTime();
+        int sends = 0;
+        queued.remove(player.getUniqueId());
+        PlayerTag tag = tagLookup.apply(player);
+        TagCatalogue catalogue = settings.get().getCatalogue();
+        RenderedTag display = tag.getDisplay(catalogue);
+        boolean shown = !display.getText().isEmpty();
+        String frame = null;
+        if (tag.isShowingOwnTag(catalogue)) {
+            frame = animations.frame(player, tag);
+        } else {
+            animations.remove(player.getUniqueId());
+        }
+        String prefix = frame != null ? frame : tag.getDisplayedTag(catalogue);
+        String baseName = player.getName();
+        String listName = prefix.isEmpty() ? baseName : prefix + " " + baseName;
+        ChatColor color = shown ? display.getColor().getLegacy() : ChatColor.WHITE;
+        String teamPrefix = shown ? prefix + " " : "";
+        
+        Applied last = applied.get(player.getUniqueId());
+        if (last == null || !last.listName.equals(listName)) {
+            sends++;
+            try {
+                player.setPlayerListName(listName);
+            } catch (Exception ignored) {
+                player.setPlayerListName(baseName);
+            }
+        }
+        if (last == null || last.color != color || !last.prefix.equals(teamPrefix)) {
+            sends++;
+            nametags.update(player, color, teamPrefix);
+        }
+        applied.put(player.getUniqueId(), new Applied(listName, color, teamPrefix));
+        metrics.recordAppearance(System.nanoTime() - start, sends);
+    }
+    
+    /**
+     * Queues players to be applied over the next ticks, at most
+     * {@code updatesPerTick} per tick and within the tick budget
+     * 
+     * @param players The players to update
+     */
+    public void queue(Iterable<? extends Player> players) {
+        for (Player player : players) {
+            queued.add(player.getUniqueId());
+        }
+        if (!queued.isEmpty() && drainTask == null) {
+            drainTask = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+        }
+    }
+    
+    private void drain() {
+        int budget = updatesPerTick;
+        long deadline = System.nanoTime() + tickBudgetNanos;
+        Iterator<UUID> it = queued.iterator();
+        // Always makes progress, even if a single update exceeds the budget
+        while (budget > 0 && it.hasNext() && (budget == updatesPerTick || System.nanoTime() < deadline)) {
+            UUID uuid = it.next();
+            it.remove();
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null && player.isOnline()) {
+                apply(player);
+                budget--;
+            }
+        }
+        if (queued.isEmpty()) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+    }
+    
+    /**
+     * Removes a player's nametag and forgets what was sent to them
+     * 
+     * @param player The player who left
+     */
+    public void remove(Player player) {
+        queued.remove(player.getUniqueId());
+        applied.remove(player.getUniqueId());
+        animations.remove(player.getUniqueId());
+        nametags.remove(player);
+    }
+    
+    /**
+     * @return Number of distinct animation tracks playing
+     */
+    public int getAnimationTrackCount() {
+        return animations.getTrackCount();
+    }
+    
+    /**
+     * Cancels pending bulk updates and stops animations
+     */
+    public void shutdown() {
+        animations.shutdown();
+        queued.clear();
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        nametags.shutdown();
+    }
+    
+    /**
+     * What was last sent for a player
+     */
+    private static final class Applied {
+        private final String listName;
+        private final ChatColor color;
+        private final String prefix;
+        
+        private Applied(String listName, ChatColor color, String prefix) {
+            this.listName = listName;
+            this.color = color;
+            this.prefix = prefix;
+        }
+    }
+}
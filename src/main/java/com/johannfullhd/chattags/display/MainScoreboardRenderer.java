@@ -0,0 +1,53 @@
+package com.johannfullhd.chattags.display;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * Renders nametags through one team per player on the main scoreboard,
+ * which every client sees
+ */
+public class MainScoreboardRenderer implements NametagRenderer {
+    
+    @Override
+    public void update(Player target, ChatColor color, String prefix) {
+        Scoreboard sb = Bukkit.getScoreboardManager().getMainScoreboard();
+        String teamName = NametagRenderer.teamName(target);
+        Team team = sb.getTeam(teamName);
+        if (team == null) {
+            try {
+                team = sb.registerNewTeam(teamName);
+            } catch (IllegalArgumentException ignored) {
+                team = sb.getTeam(teamName);
+            }
+        }
+        if (team == null) return;
+        if (!team.hasEntry(target.getName())) {
+            team.addEntry(target.getName());
+        }
+        try { team.setColor(color); } catch (Throwable ignored) { /* older APIs */ }
+        try { team.setPrefix(prefix); } catch (Throwable ignored) { /* 16-char limit on older */ }
+    }
+    
+    @Override
+    public void remove(Player player) {
+        try {
+            Scoreboard sb = Bukkit.getScoreboardManager().getMainScoreboard();
+            Team team = sb.getTeam(NametagRenderer.teamName(player));
+            if (team != null) {
+                team.removeEntry(player.getName());
+                if (team.getEntries().isEmpty()) {
+                    try { team.unregister(); } catch (Throwable ignored) {}
+                }
+            }
+        } catch (Throwable ignored) {}
+    }
+    
+    @Override
+    public void shutdown() {
+        // No tasks
+    }
+}
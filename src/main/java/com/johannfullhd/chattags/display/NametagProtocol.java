@@ -0,0 +1,85 @@
+package com.johannfullhd.chattags.display;
+
+import java.util.List;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * Sends nametag team state to a single viewer.
+ * <p>
+ * Implementations decide how the state reaches the client, e.g. through a
+ * per-viewer scoreboard or raw team packets.
+ */
+public interface NametagProtocol {
+    
+    /**
+     * Prepares a viewer before updates are sent
+     * 
+     * @param viewer The viewing player
+     * @return true if the viewer's previous state was lost (e.g. their
+     *         scoreboard was replaced) and everything has to be resent
+     */
+    boolean prepare(Player viewer);
+    
+    /**
+     * Sends a batch of team changes to one viewer
+     * 
+     * @param viewer The viewing player
+     * @param updates Changes to send, in order
+     */
+    void send(Player viewer, List<Update> updates);
+    
+    /**
+     * Forgets all state kept for a viewer who left
+     * 
+     * @param viewer The viewing player
+     */
+    void reset(Player viewer);
+    
+    /**
+     * A single team change: show a prefix and color for an entry, or
+     * remove the team again
+     */
+    final class Update {
+        private final String teamName;
+        private final String entry;
+        private final ChatColor color;
+        private final String prefix;
+        
+        private Update(String teamName, String entry, ChatColor color, String prefix) {
+            this.teamName = teamName;
+            this.entry = entry;
+            this.color = color;
+            this.prefix = prefix;
+        }
+        
+        public static Update show(String teamName, String entry, ChatColor color, String prefix) {
+            return new Update(teamName, entry, color, prefix);
+        }
+        
+        public static Update remove(String teamName, String entry) {
+            return new Update(teamName, entry, null, null);
+        }
+        
+        public String getTeamName() {
+            return teamName;
+        }
+        
+        public String getEntry() {
+            return entry;
+        }
+        
+        public ChatColor getColor() {
+            return color;
+        }
+        
+        public String getPrefix() {
+            return prefix;
+        }
+        
+        public boolean isRemoval() {
+            return color == null;
+        }
+    }
+}
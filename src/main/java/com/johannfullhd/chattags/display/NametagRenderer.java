@@ -0,0 +1,46 @@
+package com.johannfullhd.chattags.display;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * Shows a player's tag above their head. Main thread only.
+ */
+public interface NametagRenderer {
+    
+    /** Start of the names of the teams ChatTags creates */
+    String TEAM_PREFIX = "ct_";
+    
+    /**
+     * Shows or updates a player's nametag
+     * 
+     * @param target The player wearing the tag
+     * @param color Team color of the player's name
+     * @param prefix Prefix in front of the name, empty for none
+     */
+    void update(Player target, ChatColor color, String prefix);
+    
+    /**
+     * Removes everything shown for or to a player who left
+     * 
+     * @param player The player who left
+     */
+    void remove(Player player);
+    
+    /**
+     * Stops any running tasks
+     */
+    void shutdown();
+    
+    /**
+     * Builds the team name used for a player, limited to 16 characters
+     * for older servers
+     * 
+     * @param target The player wearing the tag
+     * @return The team name
+     */
+    static String teamName(Player target) {
+        String name = TEAM_PREFIX + target.getUniqueId().toString().replace("-", "");
+        return name.substring(0, Math.min(16, name.length()));
+    }
+}
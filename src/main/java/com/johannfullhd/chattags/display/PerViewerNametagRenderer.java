@@ -0,0 +1,162 @@
+package com.johannfullhd.chattags.display;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Renders nametags separately for every viewer, only for players within
+ * view distance of them.
+ * <p>
+ * Tag changes are collected and sent once per tick as one batch per
+ * viewer. Visibility is re-evaluated every {@code refreshTicks} ticks to
+ * follow players moving in and out of range.
+ */
+public class PerViewerNametagRenderer implements NametagRenderer {
+    
+    private final Plugin plugin;
+    private final NametagProtocol protocol;
+    private final double rangeSquared;
+    private final int refreshTicks;
+    private final Map<UUID, Nametag> nametags = new HashMap<>();
+    private final Map<UUID, Map<UUID, Nametag>> sent = new HashMap<>();
+    private final Set<UUID> dirty = new HashSet<>();
+    private BukkitTask task;
+    private int ticksUntilRefresh;
+    
+    /**
+     * @param plugin The owning plugin, used for scheduling
+     * @param protocol How team state reaches each viewer
+     * @param rangeBlocks Distance in blocks within which nametags are sent
+     * @param refreshTicks Ticks between visibility checks
+     */
+    public PerViewerNametagRenderer(Plugin plugin, NametagProtocol protocol, int rangeBlocks, int refreshTicks) {
+        this.plugin = plugin;
+        this.protocol = protocol;
+        this.rangeSquared = (double) rangeBlocks * rangeBlocks;
+        this.refreshTicks = Math.max(1, refreshTicks);
+    }
+    
+    @Override
+    public void update(Player target, ChatColor color, String prefix) {
+        nametags.put(target.getUniqueId(), new Nametag(NametagRenderer.teamName(target), target.getName(), color, prefix));
+        dirty.add(target.getUniqueId());
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+    
+    @Override
+    public void remove(Player player) {
+        UUID uuid = player.getUniqueId();
+        nametags.remove(uuid);
+        dirty.add(uuid);
+        sent.remove(uuid);
+        protocol.reset(player);
+    }
+    
+    @Override
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            protocol.reset(player);
+        }
+        sent.clear();
+        dirty.clear();
+    }
+    
+    private void tick() {
+        boolean refresh = --ticksUntilRefresh <= 0;
+        if (refresh) {
+            ticksUntilRefresh = refreshTicks;
+        } else if (dirty.isEmpty()) {
+            return;
+        }
+        
+        Collection<? extends Player> online = Bukkit.getOnlinePlayers();
+        for (Player viewer : online) {
+            Map<UUID, Nametag> viewerSent = sent.computeIfAbsent(viewer.getUniqueId(), k -> new HashMap<>());
+            boolean full = refresh;
+            if (protocol.prepare(viewer)) {
+                viewerSent.clear();
+                full = true;
+            }
+            
+            List<NametagProtocol.Update> batch = new ArrayList<>();
+            if (full) {
+                Set<UUID> targets = new LinkedHashSet<>(nametags.keySet());
+                targets.addAll(viewerSent.keySet());
+                for (UUID target : targets) {
+                    diff(viewer, target, viewerSent, batch);
+                }
+            } else {
+                for (UUID target : dirty) {
+                    diff(viewer, target, viewerSent, batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                protocol.send(viewer, batch);
+            }
+        }
+        dirty.clear();
+    }
+    
+    private void diff(Player viewer, UUID targetUuid, Map<UUID, Nametag> viewerSent, List<NametagProtocol.Update> batch) {
+        Player target = Bukkit.getPlayer(targetUuid);
+        Nametag desired = (target != null && isVisible(viewer, target)) ? nametags.get(targetUuid) : null;
+        Nametag current = viewerSent.get(targetUuid);
+        // Nametags are replaced, never changed, so identity means nothing new to send
+        if (desired == current) {
+            return;
+        }
+        if (desired == null) {
+            batch.add(NametagProtocol.Update.remove(current.teamName, current.entry));
+            viewerSent.remove(targetUuid);
+        } else {
+            batch.add(NametagProtocol.Update.show(desired.teamName, desired.entry, desired.color, desired.prefix));
+            viewerSent.put(targetUuid, desired);
+        }
+    }
+    
+    private boolean isVisible(Player viewer, Player target) {
+        if (viewer == target) {
+            return true;
+        }
+        if (viewer.getWorld() != target.getWorld() || !viewer.canSee(target)) {
+            return false;
+        }
+        return viewer.getLocation().distanceSquared(target.getLocation()) <= rangeSquared;
+    }
+    
+    /**
+     * Desired nametag state of one player
+     */
+    private static final class Nametag {
+        private final String teamName;
+        private final String entry;
+        private final ChatColor color;
+        private final String prefix;
+        
+        private Nametag(String teamName, String entry, ChatColor color, String prefix) {
+            this.teamName = teamName;
+            this.entry = entry;
+            this.color = color;
+            this.prefix = prefix;
+        }
+    }
+}
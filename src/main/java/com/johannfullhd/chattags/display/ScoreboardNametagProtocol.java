@@ -0,0 +1,113 @@
+package com.johannfullhd.chattags.display;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * Sends nametag teams through a scoreboard owned by each viewer. The
+ * server only sends team packets for such a scoreboard to the player
+ * viewing it, so no other client receives them.
+ * <p>
+ * A viewer that already has a private scoreboard (e.g. from a sidebar
+ * plugin) keeps it and gets the teams added to it. A viewer on the main
+ * scoreboard gets a new one that mirrors the main scoreboard's teams,
+ * objectives and scores, so vanilla sidebars and other plugins' teams
+ * keep working. The main scoreboard is read at most once a second and
+ * the result shared by all viewers; a mirror is only touched where that
+ * state changed since it was last synced.
+ */
+public class ScoreboardNametagProtocol implements NametagProtocol {
+    
+    private static final long MIRROR_INTERVAL_NANOS = 1_000_000_000L;
+    
+    private final Map<UUID, Scoreboard> boards = new HashMap<>();
+    private final Map<UUID, Scoreboard> created = new HashMap<>();
+    private final Map<UUID, ScoreboardState> mirrored = new HashMap<>();
+    private ScoreboardState mainState;
+    private long capturedAt;
+    
+    @Override
+    public boolean prepare(Player viewer) {
+        Scoreboard main = Bukkit.getScoreboardManager().getMainScoreboard();
+        Scoreboard current = viewer.getScoreboard();
+        if (current == main) {
+            ScoreboardState state = mainState(main);
+            current = Bukkit.getScoreboardManager().getNewScoreboard();
+            state.applyTo(current, null);
+            viewer.setScoreboard(current);
+            created.put(viewer.getUniqueId(), current);
+            mirrored.put(viewer.getUniqueId(), state);
+        } else if (current == created.get(viewer.getUniqueId())) {
+            ScoreboardState state = mainState(main);
+            ScoreboardState last = mirrored.put(viewer.getUniqueId(), state);
+            if (state != last) {
+                state.applyTo(current, last);
+            }
+        }
+        Scoreboard previous = boards.put(viewer.getUniqueId(), current);
+        return previous != current;
+    }
+    
+    /**
+     * Reads the main scoreboard at most once per interval. An unchanged
+     * capture keeps the previous instance, so viewers already synced to it
+     * are skipped by reference.
+     */
+    private ScoreboardState mainState(Scoreboard main) {
+        long now = System.nanoTime();
+        if (mainState == null || now - capturedAt >= MIRROR_INTERVAL_NANOS) {
+            ScoreboardState captured = ScoreboardState.capture(main);
+            if (!captured.equals(mainState)) {
+                mainState = captured;
+            }
+            capturedAt = now;
+        }
+        return mainState;
+    }
+    
+    @Override
+    public void send(Player viewer, List<Update> updates) {
+        Scoreboard board = boards.get(viewer.getUniqueId());
+        if (board == null) return;
+        for (Update update : updates) {
+            Team team = board.getTeam(update.getTeamName());
+            if (update.isRemoval()) {
+                if (team != null) {
+                    try { team.unregister(); } catch (Throwable ignored) {}
+                }
+                continue;
+            }
+            if (team == null) {
+                try {
+                    team = board.registerNewTeam(update.getTeamName());
+                } catch (IllegalArgumentException ignored) {
+                    team = board.getTeam(update.getTeamName());
+                }
+            }
+            if (team == null) continue;
+            if (!team.hasEntry(update.getEntry())) {
+                team.addEntry(update.getEntry());
+            }
+            try { team.setColor(update.getColor()); } catch (Throwable ignored) { /* older APIs */ }
+            try { team.setPrefix(update.getPrefix()); } catch (Throwable ignored) { /* 16-char limit on older */ }
+        }
+    }
+    
+    @Override
+    public void reset(Player viewer) {
+        boards.remove(viewer.getUniqueId());
+        mirrored.remove(viewer.getUniqueId());
+        Scoreboard own = created.remove(viewer.getUniqueId());
+        // Hand the main scoreboard back if nobody replaced ours meanwhile
+        if (own != null && viewer.getScoreboard() == own) {
+            viewer.setScoreboard(Bukkit.getScoreboardManager().getMainScoreboard());
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.johannfullhd.chattags.display;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.bukkit.ChatColor;
+import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.Objective;
+import org.bukkit.scoreboard.RenderType;
+import org.bukkit.scoreboard.Score;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * An immutable copy of a scoreboard's teams, objectives and scores,
+ * leaving out the nametag teams. Captured once from the main scoreboard
+ * and applied to every viewer's mirror, so reading the main scoreboard
+ * does not grow with the number of viewers.
+ */
+final class ScoreboardState {
+    
+    private final Map<String, TeamState> teams;
+    private final Map<String, ObjectiveState> objectives;
+    private final Map<String, Map<String, Integer>> scores;
+    
+    private ScoreboardState(Map<String, TeamState> teams, Map<String, ObjectiveState> objectives,
+            Map<String, Map<String, Integer>> scores) {
+        this.teams = teams;
+        this.objectives = objectives;
+        this.scores = scores;
+    }
+    
+    /**
+     * Reads the current state of a scoreboard. Main thread only.
+     * 
+     * @param board The scoreboard to read
+     * @return The captured state
+     */
+    static ScoreboardState capture(Scoreboard board) {
+        Map<String, TeamState> teams = new HashMap<>();
+        for (Team team : board.getTeams()) {
+            if (!team.getName().startsWith(NametagRenderer.TEAM_PREFIX)) {
+                teams.put(team.getName(), new TeamState(team));
+            }
+        }
+        Map<String, ObjectiveState> objectives = new HashMap<>();
+        for (Objective objective : board.getObjectives()) {
+            objectives.put(objective.getName(), new ObjectiveState(objective));
+        }
+        Map<String, Map<String, Integer>> scores = new HashMap<>();
+        for (String entry : board.getEntries()) {
+            Map<String, Integer> entryScores = new HashMap<>();
+            for (Score score : board.getScores(entry)) {
+                if (score.isScoreSet()) {
+                    entryScores.put(score.getObjective().getName(), score.getScore());
+                }
+            }
+            scores.put(entry, entryScores);
+        }
+        return new ScoreboardState(teams, objectives, scores);
+    }
+    
+    /**
+     * Brings a viewer's scoreboard to this state, leaving the nametag teams
+     * alone. Entries in a nametag team stay there, as an entry can only be
+     * in one team.
+     * 
+     * @param board The viewer's scoreboard
+     * @param previous The state last applied to the board, null if unknown;
+     *        only what changed since is then touched
+     */
+    void applyTo(Scoreboard board, ScoreboardState previous) {
+        for (Map.Entry<String, TeamState> entry : teams.entrySet()) {
+            if (previous != null && entry.getValue().equals(previous.teams.get(entry.getKey()))) {
+                continue;
+            }
+            Team copy = board.getTeam(entry.getKey());
+            if (copy == null) {
+                copy = board.registerNewTeam(entry.getKey());
+            }
+            entry.getValue().applyTo(board, copy);
+        }
+        for (String name : previous == null ? teamNames(board) : previous.teams.keySet()) {
+            Team copy = board.getTeam(name);
+            if (copy != null && !teams.containsKey(name)) {
+                copy.unregister();
+            }
+        }
+        
+        for (Map.Entry<String, ObjectiveState> entry : objectives.entrySet()) {
+            if (previous != null && entry.getValue().equals(previous.objectives.get(entry.getKey()))) {
+                continue;
+            }
+            entry.getValue().applyTo(board, entry.getKey());
+        }
+        for (String name : previous == null ? objectiveNames(board) : previous.objectives.keySet()) {
+            Objective copy = board.getObjective(name);
+            if (copy != null && !objectives.containsKey(name)) {
+                copy.unregister();
+            }
+        }
+        
+        for (String entry : previous == null ? board.getEntries() : previous.scores.keySet()) {
+            if (!scores.containsKey(entry)) {
+                board.resetScores(entry);
+            }
+        }
+        for (Map.Entry<String, Map<String, Integer>> entry : scores.entrySet()) {
+            Map<String, Integer> before = previous == null ? null : previous.scores.get(entry.getKey());
+            if (entry.getValue().equals(before)) {
+                continue;
+            }
+            if (before != null && !entry.getValue().keySet().containsAll(before.keySet())) {
+                // A single score cannot be removed on older APIs, reset the entry and set the rest again
+                board.resetScores(entry.getKey());
+            }
+            for (Map.Entry<String, Integer> score : entry.getValue().entrySet()) {
+                Objective objective = board.getObjective(score.getKey());
+                if (objective == null) {
+                    continue;
+                }
+                Score copy = objective.getScore(entry.getKey());
+                // Only changed scores are set, each set is sent to the viewer
+                if (!copy.isScoreSet() || copy.getScore() != score.getValue()) {
+                    copy.setScore(score.getValue());
+                }
+            }
+        }
+    }
+    
+    private static Set<String> teamNames(Scoreboard board) {
+        Set<String> names = new HashSet<>();
+        for (Team team : board.getTeams()) {
+            if (!team.getName().startsWith(NametagRenderer.TEAM_PREFIX)) {
+                names.add(team.getName());
+            }
+        }
+        return names;
+    }
+    
+    private static Set<String> objectiveNames(Scoreboard board) {
+        Set<String> names = new HashSet<>();
+        for (Objective objective : board.getObjectives()) {
+            names.add(objective.getName());
+        }
+        return names;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScoreboardState)) {
+            return false;
+        }
+        ScoreboardState other = (ScoreboardState) o;
+        return teams.equals(other.teams) && objectives.equals(other.objectives) && scores.equals(other.scores);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(teams, objectives, scores);
+    }
+    
+    private static final class TeamState {
+        
+        private final String displayName;
+        private final String prefix;
+        private final String suffix;
+        private final boolean friendlyFire;
+        private final boolean seeFriendlyInvisibles;
+        private final ChatColor color;
+        private final Map<Team.Option, Team.OptionStatus> options;
+        private final Set<String> entries;
+        
+        TeamState(Team team) {
+            this.displayName = team.getDisplayName();
+            this.prefix = team.getPrefix();
+            this.suffix = team.getSuffix();
+            this.friendlyFire = team.allowFriendlyFire();
+            this.seeFriendlyInvisibles = team.canSeeFriendlyInvisibles();
+            ChatColor color = null;
+            try {
+                color = team.getColor();
+            } catch (Throwable ignored) { /* older APIs */ }
+            this.color = color;
+            Map<Team.Option, Team.OptionStatus> options = new EnumMap<>(Team.Option.class);
+            try {
+                for (Team.Option option : Team.Option.values()) {
+                    options.put(option, team.getOption(option));
+                }
+            } catch (Throwable ignored) { /* older APIs */ }
+            this.options = options;
+            this.entries = Collections.unmodifiableSet(new HashSet<>(team.getEntries()));
+        }
+        
+        void applyTo(Scoreboard board, Team copy) {
+            if (!copy.getDisplayName().equals(displayName)) {
+                copy.setDisplayName(displayName);
+            }
+            if (!copy.getPrefix().equals(prefix)) {
+                copy.setPrefix(prefix);
+            }
+            if (!copy.getSuffix().equals(suffix)) {
+                copy.setSuffix(suffix);
+            }
+            if (copy.allowFriendlyFire() != friendlyFire) {
+                copy.setAllowFriendlyFire(friendlyFire);
+            }
+            if (copy.canSeeFriendlyInvisibles() != seeFriendlyInvisibles) {
+                copy.setCanSeeFriendlyInvisibles(seeFriendlyInvisibles);
+            }
+            if (color != null && copy.getColor() != color) {
+                copy.setColor(color);
+            }
+            for (Map.Entry<Team.Option, Team.OptionStatus> option : options.entrySet()) {
+                if (copy.getOption(option.getKey()) != option.getValue()) {
+                    copy.setOption(option.getKey(), option.getValue());
+                }
+            }
+            for (String entry : entries) {
+                Team holder = board.getEntryTeam(entry);
+                if (holder == null || (holder != copy && !holder.getName().startsWith(NametagRenderer.TEAM_PREFIX))) {
+                    copy.addEntry(entry);
+                }
+            }
+            for (String entry : copy.getEntries()) {
+                if (!entries.contains(entry)) {
+                    copy.removeEntry(entry);
+                }
+            }
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TeamState)) {
+                return false;
+            }
+            TeamState other = (TeamState) o;
+            return friendlyFire == other.friendlyFire
+                && seeFriendlyInvisibles == other.seeFriendlyInvisibles
+                && displayName.equals(other.displayName)
+                && prefix.equals(other.prefix)
+                && suffix.equals(other.suffix)
+                && color == other.color
+                && options.equals(other.options)
+                && entries.equals(other.entries);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(displayName, prefix, suffix, color, entries);
+        }
+    }
+    
+    private static final class ObjectiveState {
+        
+        private final String criteria;
+        private final String displayName;
+        private final DisplaySlot displaySlot;
+        private final RenderType renderType;
+        
+        @SuppressWarnings("deprecation")
+        ObjectiveState(Objective objective) {
+            this.criteria = objective.getCriteria();
+            this.displayName = objective.getDisplayName();
+            this.displaySlot = objective.getDisplaySlot();
+            RenderType renderType = null;
+            try {
+                renderType = objective.getRenderType();
+            } catch (Throwable ignored) { /* older APIs */ }
+            this.renderType = renderType;
+        }
+        
+        @SuppressWarnings("deprecation")
+        void applyTo(Scoreboard board, String name) {
+            Objective copy = board.getObjective(name);
+            if (copy == null) {
+                // Criteria names work on every version back to 1.13
+                copy = board.registerNewObjective(name, criteria, displayName);
+            } else if (!copy.getDisplayName().equals(displayName)) {
+                copy.setDisplayName(displayName);
+            }
+            if (copy.getDisplaySlot() != displaySlot) {
+                copy.setDisplaySlot(displaySlot);
+            }
+            if (renderType != null && copy.getRenderType() != renderType) {
+                copy.setRenderType(renderType);
+            }
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ObjectiveState)) {
+                return false;
+            }
+            ObjectiveState other = (ObjectiveState) o;
+            return criteria.equals(other.criteria)
+                && displayName.equals(other.displayName)
+                && displaySlot == other.displaySlot
+                && renderType == other.renderType;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(criteria, displayName, displaySlot, renderType);
+        }
+    }
+}
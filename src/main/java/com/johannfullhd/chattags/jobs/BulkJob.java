@@ -0,0 +1,140 @@
+package com.johannfullhd.chattags.jobs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bulk operation running in the background, with progress and
+ * cooperative cancellation
+ */
+public final class BulkJob {
+    
+    /**
+     * Lifecycle of a job
+     */
+    public enum State {
+        QUEUED, RUNNING, DONE, CANCELLED, FAILED
+    }
+    
+    private final int id;
+    private final String name;
+    private final long createdMillis = System.currentTimeMillis();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger changed = new AtomicInteger();
+    private final CompletableFuture<BulkJob> completion = new CompletableFuture<>();
+    private volatile int total = -1;
+    private volatile boolean cancelRequested;
+    private volatile State state = State.QUEUED;
+    
+    BulkJob(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+    
+    public int getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    void setState(State state) {
+        this.state = state;
+        if (state == State.DONE || state == State.CANCELLED || state == State.FAILED) {
+            completion.complete(this);
+        }
+    }
+    
+    /**
+     * @return Time the job was submitted, in epoch milliseconds
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+    
+    /**
+     * Sets the number of items the job will go through
+     * 
+     * @param total Number of items
+     */
+    public void setTotal(int total) {
+        this.total = total;
+    }
+    
+    /**
+     * @return Number of items, -1 while not known yet
+     */
+    public int getTotal() {
+        return total;
+    }
+    
+    /**
+     * Marks items as processed
+     * 
+     * @param items Number of items
+     */
+    public void advance(int items) {
+        processed.addAndGet(items);
+    }
+    
+    public int getProcessed() {
+        return processed.get();
+    }
+    
+    /**
+     * Counts items the job actually changed
+     * 
+     * @param items Number of items
+     */
+    public void addChanged(int items) {
+        changed.addAndGet(items);
+    }
+    
+    public int getChanged() {
+        return changed.get();
+    }
+    
+    /**
+     * @return Progress between 0 and 100
+     */
+    public int getPercent() {
+        int t = total;
+        if (state == State.DONE) {
+            return 100;
+        }
+        return t <= 0 ? 0 : (int) Math.min(100L, processed.get() * 100L / t);
+    }
+    
+    /**
+     * Asks the job to stop at its next checkpoint. Work done so far is kept.
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+    
+    /**
+     * @return true if the job should stop
+     */
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+    
+    /**
+     * @return true once the job has stopped for any reason
+     */
+    public boolean isFinished() {
+        return completion.isDone();
+    }
+    
+    /**
+     * @return Completes with this job once it has stopped
+     */
+    public CompletableFuture<BulkJob> getCompletion() {
+        return completion;
+    }
+}
@@ -0,0 +1,117 @@
+package com.johannfullhd.chattags.jobs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs bulk jobs one after another on a background worker and keeps
+ * recently finished jobs around for progress queries
+ */
+public class BulkJobRunner {
+    
+    /**
+     * The work of a job. Implementations should call
+     * {@link BulkJob#advance(int)} as they go and check
+     * {@link BulkJob#isCancelRequested()} between chunks.
+     */
+    @FunctionalInterface
+    public interface Body {
+        void run(BulkJob job) throws Exception;
+    }
+    
+    private static final int KEEP_FINISHED = 10;
+    
+    private final Logger logger;
+    private final ExecutorService worker;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Map<Integer, BulkJob> jobs = new ConcurrentSkipListMap<>();
+    
+    public BulkJobRunner(Logger logger) {
+        this.logger = logger;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ChatTags-Jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Queues a job behind any job that is still running
+     * 
+     * @param name Short name shown in /tag jobs
+     * @param body The work
+     * @return The queued job
+     */
+    public BulkJob submit(String name, Body body) {
+        BulkJob job = new BulkJob(nextId.getAndIncrement(), name);
+        jobs.put(job.getId(), job);
+        prune();
+        worker.execute(() -> run(job, body));
+        return job;
+    }
+    
+    private void run(BulkJob job, Body body) {
+        if (job.isCancelRequested()) {
+            job.setState(BulkJob.State.CANCELLED);
+            return;
+        }
+        job.setState(BulkJob.State.RUNNING);
+        try {
+            body.run(job);
+            job.setState(job.isCancelRequested() ? BulkJob.State.CANCELLED : BulkJob.State.DONE);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Bulk job #" + job.getId() + " (" + job.getName() + ") failed", e);
+            job.setState(BulkJob.State.FAILED);
+        }
+    }
+    
+    private void prune() {
+        int finished = 0;
+        List<BulkJob> snapshot = new ArrayList<>(jobs.values());
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            BulkJob job = snapshot.get(i);
+            if (job.isFinished() && ++finished > KEEP_FINISHED) {
+                jobs.remove(job.getId());
+            }
+        }
+    }
+    
+    /**
+     * @param id Job id
+     * @return The job, or null if unknown or long finished
+     */
+    public BulkJob get(int id) {
+        return jobs.get(id);
+    }
+    
+    /**
+     * @return Running, queued and recently finished jobs, oldest first
+     */
+    public Collection<BulkJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+    
+    /**
+     * Cancels all jobs and waits for the running one to reach a checkpoint
+     */
+    public void shutdown() {
+        jobs.values().forEach(BulkJob::cancel);
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Bulk jobs did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
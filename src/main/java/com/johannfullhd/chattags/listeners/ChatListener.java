@@ -3,11 +3,14 @@ package com.johannfullhd.chattags.listeners;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+import com.johannfullhd.chattags.config.TagSettings;
 import com.johannfullhd.chattags.managers.TagManager;
-import com.johannfullhd.chattags.models.PlayerTag;
 
 public class ChatListener implements org.bukkit.event.Listener {
     private final TagManager tagManager;
@@ -18,19 +21,48 @@ public class ChatListener implements org.bukkit.event.Listener {
     
     @EventHandler(priority = EventPriority.HIGH)
     public void onPlayerChat(AsyncPlayerChatEvent event) {
-        PlayerTag tag = tagManager.getTag(event.getPlayer());
-        String tagPrefix = tag.getFormattedTag();
-        String format = (tagPrefix.isEmpty() ? "" : tagPrefix) + "<%1$s> %2$s";
-        event.setFormat(format);
+        // The format is cached per rendered tag and template and the shown tag per
+        // catalogue, so nothing is built per message
+        long start = System.nanoTime();
+        TagSettings settings = tagManager.getSettings();
+        event.setFormat(tagManager.getTag(event.getPlayer()).getChatFormat(settings.getChatTemplate(), settings.getCatalogue()));
+        tagManager.getMetrics().recordChatFormat(System.nanoTime() - start);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        // Runs off the main thread, so storage access here never blocks a tick
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            tagManager.loadPlayer(event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        // Refused logins (whitelist, ban, full server) never quit, so the tag loaded during pre-login is dropped here
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            tagManager.unloadPlayer(event.getPlayer().getUniqueId());
+        }
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
+        // Permissions are set up by now, so tags granted by them are resolved here once
+        tagManager.refreshGrantedTags(event.getPlayer());
         tagManager.applyTagAppearance(event.getPlayer());
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        // Permission plugins may grant different permissions per world
+        if (tagManager.refreshGrantedTags(event.getPlayer())) {
+            tagManager.applyTagAppearance(event.getPlayer());
+        }
+    }
+
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         tagManager.removeScoreboardTeamEntry(event.getPlayer());
+        tagManager.unloadPlayer(event.getPlayer().getUniqueId());
     }
 }
\ No newline at end of file
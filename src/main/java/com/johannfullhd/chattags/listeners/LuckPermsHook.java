@@ -0,0 +1,56 @@
+package com.johannfullhd.chattags.listeners;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Reports permission changes made through LuckPerms.
+ * <p>
+ * Bukkit has no event for changed permissions, so without this tags
+ * granted by permissions only update on join, world change and reload.
+ * The LuckPerms API is looked up reflectively so ChatTags runs without it.
+ */
+public final class LuckPermsHook {
+    
+    private LuckPermsHook() {
+    }
+    
+    /**
+     * Subscribes to LuckPerms user data changes if LuckPerms is installed
+     *
+     * @param plugin The owning plugin
+     * @param onChange Called with the player whose permissions changed, on
+     *                 a LuckPerms thread
+     * @return true if subscribed
+     */
+    public static boolean register(Plugin plugin, Consumer<UUID> onChange) {
+        if (plugin.getServer().getPluginManager().getPlugin("LuckPerms") == null) {
+            return false;
+        }
+        try {
+            Object api = Class.forName("net.luckperms.api.LuckPermsProvider").getMethod("get").invoke(null);
+            Object eventBus = Class.forName("net.luckperms.api.LuckPerms").getMethod("getEventBus").invoke(api);
+            Class<?> eventClass = Class.forName("net.luckperms.api.event.user.UserDataRecalculateEvent");
+            Method getUser = eventClass.getMethod("getUser");
+            Method getUniqueId = Class.forName("net.luckperms.api.model.user.User").getMethod("getUniqueId");
+            Consumer<Object> handler = event -> {
+                try {
+                    onChange.accept((UUID) getUniqueId.invoke(getUser.invoke(event)));
+                } catch (ReflectiveOperationException e) {
+                    plugin.getLogger().log(Level.WARNING, "Could not read a LuckPerms permission change", e);
+                }
+            };
+            Class.forName("net.luckperms.api.event.EventBus")
+                .getMethod("subscribe", Object.class, Class.class, Consumer.class)
+                .invoke(eventBus, plugin, eventClass, handler);
+            return true;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not listen to LuckPerms permission changes", e);
+            return false;
+        }
+    }
+}
@@ -2,116 +2,831 @@ package com.johannfullhd.chattags.managers;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
-import org.bukkit.scoreboard.Scoreboard;
-import org.bukkit.scoreboard.Team;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.PluginManager;
 
 import com.johannfullhd.chattags.ChatTags;
+import com.johannfullhd.chattags.animation.TagAnimation;
+import com.johannfullhd.chattags.config.TagSettings;
+import com.johannfullhd.chattags.cooldown.CooldownAction;
+import com.johannfullhd.chattags.cooldown.CooldownTracker;
+import com.johannfullhd.chattags.cooldown.MutationLimiter;
+import com.johannfullhd.chattags.display.AppearanceUpdater;
+import com.johannfullhd.chattags.display.MainScoreboardRenderer;
+import com.johannfullhd.chattags.display.NametagRenderer;
+import com.johannfullhd.chattags.display.PerViewerNametagRenderer;
+import com.johannfullhd.chattags.display.ScoreboardNametagProtocol;
+import com.johannfullhd.chattags.jobs.BulkJob;
+import com.johannfullhd.chattags.jobs.BulkJobRunner;
+import com.johannfullhd.chattags.metrics.MetricsExporter;
+import com.johannfullhd.chattags.metrics.MetricsRegistry;
+import com.johannfullhd.chattags.metrics.TagMetrics;
+import com.johannfullhd.chattags.models.OwnedTags;
 import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.RenderedTag;
+import com.johannfullhd.chattags.models.TagCatalogue;
+import com.johannfullhd.chattags.models.TagColor;
+import com.johannfullhd.chattags.search.TagIndex;
+import com.johannfullhd.chattags.search.TagQuery;
+import com.johannfullhd.chattags.storage.BinaryTagStorage;
+import com.johannfullhd.chattags.storage.H2TagStorage;
+import com.johannfullhd.chattags.storage.TagStorage;
+import com.johannfullhd.chattags.storage.TagStorageMigrator;
+import com.johannfullhd.chattags.storage.WriteBehindQueue;
+import com.johannfullhd.chattags.storage.YamlTagStorage;
+import com.johannfullhd.chattags.sync.FileTagSyncBus;
+import com.johannfullhd.chattags.sync.TagDelta;
+import com.johannfullhd.chattags.sync.TagSyncBus;
 
 /**
- * Manages player tags, including storage and retrieval
+ * Manages player tags, including storage and retrieval.
+ * <p>
+ * Tag changes may be made from any thread; the resulting Bukkit calls are
+ * moved to the main thread.
  */
 public class TagManager {
     
+    private static final int JOB_CHUNK_SIZE = 1000;
+    
     private final ChatTags plugin;
     private final Map<UUID, PlayerTag> playerTags;
-    private File dataFile;
-    private FileConfiguration dataConfig;
-    private final Map<UUID, Long> lastChangeAt = new ConcurrentHashMap<>();
-
-    public TagManager(ChatTags plugin) {
+    private final TagStorage storage;
+    private final CooldownTracker cooldowns = new CooldownTracker();
+    private final File cooldownFile;
+    private final WriteBehindQueue saveQueue;
+    private final boolean lazyLoading;
+    private volatile TagSettings settings;
+    private final AppearanceUpdater appearance;
+    private final String nodeId;
+    private final TagSyncBus syncBus;
+    private final TagIndex index = new TagIndex();
+    private final TagMetrics metrics = new TagMetrics();
+    private final MutationLimiter limiter;
+    private final long saveDelayMillis;
+    private final long busySaveDelayMillis;
+    private final MetricsExporter metricsExporter;
+    private final BulkJobRunner jobs;
+    private final Set<UUID> grantRefreshes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean grantRefreshScheduled = new AtomicBoolean();
+    private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
+    
+    public TagManager(ChatTags plugin) throws IOException {
         this.plugin = plugin;
-        this.playerTags = new HashMap<>();
-        setupDataFile();
-        loadAllTags();
+        this.settings = TagSettings.fromConfig(plugin.getConfig(), plugin.getLogger());
+        this.cooldownFile = plugin.getConfig().getBoolean("tag-settings.persist-cooldowns", false)
+            ? new File(plugin.getDataFolder(), "cooldowns.dat") : null;
+        loadCooldowns();
+        this.playerTags = new ConcurrentHashMap<>();
+        this.storage = createStorage();
+        // With caching, tags are loaded per player on join and dropped on quit
+        this.lazyLoading = plugin.getConfig().getBoolean("performance.cache-tags", true);
+        if (!lazyLoading) {
+            loadAllTags();
+        }
+        this.limiter = new MutationLimiter(plugin.getConfig().getInt("performance.max-changes-per-second", 20),
+            plugin.getConfig().getInt("performance.chat-flood-per-second", 100), metrics::getChatPerSecond,
+            metrics.getRegistry());
+        this.saveDelayMillis = Math.max(0L, plugin.getConfig().getLong("performance.save-delay-millis", 1000L));
+        this.busySaveDelayMillis = Math.max(saveDelayMillis,
+            plugin.getConfig().getLong("performance.busy-save-delay-millis", 10000L));
+        this.saveQueue = new WriteBehindQueue(plugin.getLogger(), this::writeBatch, this::getSaveDelayMillis);
+        this.saveQueue.startAutoSave(plugin.getConfig().getLong("performance.auto-save-interval", 5L));
+        this.appearance = new AppearanceUpdater(plugin, this::getTag, createNametagRenderer(),
+            plugin.getConfig().getInt("performance.scoreboard-updates-per-tick", 20),
+            plugin.getConfig().getDouble("performance.tick-budget-millis", 2.0), metrics,
+            () -> settings);
+        this.nodeId = resolveNodeId();
+        this.syncBus = createSyncBus();
+        if (syncBus != null) {
+            syncBus.start(this::applyRemote);
+        }
+        this.metricsExporter = createMetricsExporter();
+        this.jobs = new BulkJobRunner(plugin.getLogger());
+    }
+    
+    /**
+     * Builds the search index of all stored tags on an async task. Search
+     * stays unavailable until it is done. Kept out of the constructor so
+     * the manager can be created without a running server.
+     */
+    public void startIndexing() {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> index.build(getAllStoredTags()));
+    }
+    
+    /**
+     * Registers the gauges and starts the exporters enabled in the config
+     * 
+     * @return The exporter
+     */
+    private MetricsExporter createMetricsExporter() {
+        MetricsRegistry registry = metrics.getRegistry();
+        registry.gauge("chattags_loaded_players", "Players whose tag is held in memory", playerTags::size);
+        registry.gauge("chattags_pending_saves", "Players with changes not yet written", saveQueue::getPendingCount);
+        registry.gauge("chattags_indexed_tags", "Players in the search index", index::size);
+        registry.gauge("chattags_distinct_tags", "Distinct tag text and color combinations in memory", RenderedTag::poolSize);
+        registry.gauge("chattags_storage_written_bytes", "Bytes written by the storage backend", storage::getBytesWritten);
+        registry.gauge("chattags_animation_tracks", "Distinct animated tags currently playing", appearance::getAnimationTrackCount);
+        
+        MetricsExporter exporter = new MetricsExporter(registry, plugin.getLogger());
+        String file = plugin.getConfig().getString("metrics.prometheus-file", "");
+        if (!file.isEmpty()) {
+            exporter.startFile(new File(plugin.getDataFolder(), file),
+                plugin.getConfig().getLong("metrics.file-interval-seconds", 15L));
+        }
+        int port = plugin.getConfig().getInt("metrics.http-port", 0);
+        if (port > 0) {
+            try {
+                exporter.startHttp(plugin.getConfig().getString("metrics.http-bind", "127.0.0.1"), port);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not start the metrics endpoint on port " + port, e);
+            }
+        }
+        return exporter;
+    }
+    
+    /**
+     * @return The metrics for the hot paths
+     */
+    public TagMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * @return Delay before changes are written, longer while the server is
+     *         busy so bursts of changes merge into fewer writes
+     */
+    private long getSaveDelayMillis() {
+        return limiter.isUnderPressure() ? busySaveDelayMillis : saveDelayMillis;
+    }
+    
+    /**
+     * Summarizes the current load for /tag stats
+     * 
+     * @return Chat lines
+     */
+    public List<String> describePressure() {
+        List<String> lines = limiter.describe();
+        lines.add(ChatColor.YELLOW + "Pending saves: " + ChatColor.WHITE + saveQueue.getPendingCount()
+            + ChatColor.GRAY + ", written after " + getSaveDelayMillis() + "ms");
+        return lines;
+    }
+    
+    /**
+     * Writes a batch of changed tags and records how long it took
+     * 
+     * @param batch Changed tags by player UUID
+     * @throws IOException if the batch could not be written
+     */
+    private void writeBatch(Map<UUID, PlayerTag> batch) throws IOException {
+        long start = System.nanoTime();
+        try {
+            storage.saveAll(batch);
+        } catch (IOException | RuntimeException e) {
+            metrics.recordSaveFailure();
+            throw e;
+        }
+        metrics.recordSave(System.nanoTime() - start, batch.size());
+    }
+    
+    /**
+     * Loads every stored tag and records how long it took
+     * 
+     * @return All stored tags by player UUID
+     * @throws IOException if the backend could not be read
+     */
+    private Map<UUID, PlayerTag> loadStored() throws IOException {
+        long start = System.nanoTime();
+        Map<UUID, PlayerTag> all = storage.loadAll();
+        metrics.recordLoadAll(System.nanoTime() - start);
+        return all;
+    }
+    
+    /**
+     * Reads this server's sync node id, generating one if none is set
+     * 
+     * @return The node id, safe to use in file names
+     */
+    private String resolveNodeId() {
+        String id = plugin.getConfig().getString("sync.node-id", "");
+        if (id.isEmpty()) {
+            id = UUID.randomUUID().toString().substring(0, 8);
+        }
+        return id.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+    
+    /**
+     * Creates the sync transport selected in the config
+     * 
+     * @return The transport, or null if sync is disabled
+     */
+    private TagSyncBus createSyncBus() {
+        if (!plugin.getConfig().getBoolean("sync.enabled", false)) {
+            return null;
+        }
+        String transport = plugin.getConfig().getString("sync.transport", "file").toLowerCase();
+        if (!transport.equals("file")) {
+            plugin.getLogger().warning("Unknown sync transport '" + transport + "', falling back to file");
+        }
+        File directory = new File(plugin.getConfig().getString("sync.file.directory", "../ChatTags-sync"));
+        if (!directory.isAbsolute()) {
+            directory = new File(plugin.getDataFolder(), directory.getPath());
+        }
+        return new FileTagSyncBus(directory, nodeId,
+            plugin.getConfig().getLong("sync.file.poll-millis", 250L),
+            plugin.getConfig().getLong("sync.file.retention-seconds", 60L) * 1000L,
+            plugin.getLogger());
+    }
+    
+    /**
+     * Creates the nametag renderer selected in the config
+     * 
+     * @return The renderer
+     */
+    private NametagRenderer createNametagRenderer() {
+        String mode = plugin.getConfig().getString("display.nametag-mode", "team").toLowerCase();
+        if (mode.equals("per-viewer")) {
+            int range = plugin.getConfig().getInt("display.view-distance-blocks", 0);
+            if (range <= 0) {
+                range = plugin.getServer().getViewDistance() * 16;
+            }
+            int refreshTicks = plugin.getConfig().getInt("display.refresh-ticks", 20);
+            return new PerViewerNametagRenderer(plugin, new ScoreboardNametagProtocol(), range, refreshTicks);
+        }
+        if (!mode.equals("team")) {
+            plugin.getLogger().warning("Unknown nametag mode '" + mode + "', falling back to team");
+        }
+        return new MainScoreboardRenderer();
+    }
+    
+    /**
+     * Rebuilds the settings snapshot from the current plugin config. The
+     * new snapshot is swapped in atomically, so checks in progress finish
+     * with the old settings. Granted tags are worked out again and online
+     * players are repainted so changed animations and catalogue tags take
+     * effect.
+     */
+    public void reloadSettings() {
+        settings = TagSettings.fromConfig(plugin.getConfig(), plugin.getLogger());
+        runOnMain(() -> {
+            registerPermissions();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                refreshGrantedTags(player);
+            }
+            appearance.queue(Bukkit.getOnlinePlayers());
+        });
+    }
+    
+    /**
+     * Registers the permissions of catalogue tags that no other plugin
+     * declared, so they default to false instead of being granted to ops,
+     * and one permission per animation as a child of
+     * {@code chattags.animation.*}, as Bukkit does not expand wildcards.
+     * Called on enable and on reload.
+     */
+    public void registerPermissions() {
+        PluginManager manager = Bukkit.getPluginManager();
+        for (TagCatalogue.Entry entry : settings.getCatalogue().getEntries()) {
+            if (manager.getPermission(entry.getPermission()) == null) {
+                manager.addPermission(new Permission(entry.getPermission(),
+                    "Grants the catalogue tag " + entry.getKey(), PermissionDefault.FALSE));
+            }
+        }
+        Permission allAnimations = manager.getPermission(TagAnimation.PERMISSION_PREFIX + "*");
+        for (String name : settings.getAnimations().keySet()) {
+            String node = TagAnimation.PERMISSION_PREFIX + name;
+            Permission permission = manager.getPermission(node);
+            if (permission == null) {
+                permission = new Permission(node, "Allows using the tag animation " + name, PermissionDefault.OP);
+                manager.addPermission(permission);
+            }
+            if (allAnimations != null && !allAnimations.getChildren().containsKey(node)) {
+                permission.addParent(allAnimations, true);
+            }
+        }
+    }
+    
+    /**
+     * Works out which catalogue tags a player is granted by permissions
+     * and keeps them with the loaded tag, so showing a rank tag never
+     * checks a permission. Called on join, on permission changes and on
+     * reload. Main thread only.
+     * 
+     * @param player The player
+     * @return true if the granted tags changed
+     */
+    public boolean refreshGrantedTags(Player player) {
+        long start = System.nanoTime();
+        int[] ids = settings.getCatalogue().getEntries().stream()
+            .filter(entry -> player.hasPermission(entry.getPermission()))
+            .mapToInt(TagCatalogue.Entry::getId)
+            .toArray();
+        OwnedTags granted = ids.length == 0 ? OwnedTags.NONE : OwnedTags.of(ids);
+        UUID uuid = player.getUniqueId();
+        if (!playerTags.containsKey(uuid)) {
+            // Resolved again once the load finishes
+            loadPlayerAsync(uuid);
+            return false;
+        }
+        boolean[] changed = {false};
+        playerTags.computeIfPresent(uuid, (k, current) -> {
+            if (current.getGranted().equals(granted)) {
+                return current;
+            }
+            changed[0] = true;
+            return current.withGranted(granted);
+        });
+        metrics.recordGrantResolve(System.nanoTime() - start);
+        return changed[0];
+    }
+    
+    /**
+     * Schedules {@link #refreshGrantedTags} for a player on the next tick,
+     * merging repeated requests. Safe to call from any thread, e.g. from
+     * permission plugin events.
+     * 
+     * @param uuid The player's UUID
+     */
+    public void queueGrantRefresh(UUID uuid) {
+        if (grantRefreshes.add(uuid) && grantRefreshScheduled.compareAndSet(false, true) && plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, this::runGrantRefreshes);
+        }
+    }
+    
+    private void runGrantRefreshes() {
+        // Cleared first, so requests arriving while draining schedule a new run
+        grantRefreshScheduled.set(false);
+        for (Iterator<UUID> it = grantRefreshes.iterator(); it.hasNext();) {
+            Player player = Bukkit.getPlayer(it.next());
+            it.remove();
+            if (player != null && refreshGrantedTags(player)) {
+                applyTagAppearance(player);
+            }
+        }
+    }
+    
+    /**
+     * @return The current settings snapshot
+     */
+    public TagSettings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * Opens the storage backend selected in the config, migrating the
+     * legacy playerdata.yml into it on first use
+     * 
+     * @return The opened backend
+     * @throws IOException if the backend could not be opened
+     */
+    private TagStorage createStorage() throws IOException {
+        File yamlFile = new File(plugin.getDataFolder(), "playerdata.yml");
+        String type = plugin.getConfig().getString("storage.type", "yaml").toLowerCase();
+        switch (type) {
+            case "h2":
+                int poolSize = plugin.getConfig().getInt("storage.pool-size", 4);
+                TagStorage h2 = new H2TagStorage(new File(plugin.getDataFolder(), "playerdata"), poolSize, plugin.getLogger());
+                try {
+                    TagStorageMigrator.migrateFromYaml(yamlFile, h2, plugin.getLogger());
+                } catch (IOException e) {
+                    h2.close();
+                    throw e;
+                }
+                return h2;
+            case "binary":
+                TagStorage binary = new BinaryTagStorage(new File(plugin.getDataFolder(), "playerdata.bin"), plugin.getLogger());
+                TagStorageMigrator.migrateFromYaml(yamlFile, binary, plugin.getLogger());
+                return binary;
+            case "yaml":
+                return new YamlTagStorage(yamlFile, plugin.getLogger());
+            default:
+                plugin.getLogger().warning("Unknown storage type '" + type + "', falling back to yaml");
+                return new YamlTagStorage(yamlFile, plugin.getLogger());
+        }
     }
     
     /**
-     * Sets up the data file for storing player tags
+     * Loads all player tags from storage
      */
-    private void setupDataFile() {
-        dataFile = new File(plugin.getDataFolder(), "playerdata.yml");
-        if (!dataFile.exists()) {
+    private void loadAllTags() throws IOException {
+        playerTags.putAll(loadStored());
+        plugin.getLogger().info("Loaded " + playerTags.size() + " player tags");
+    }
+    
+    /**
+     * Loads a player's tag into memory. Safe to call from async threads,
+     * e.g. during pre-login.
+     * 
+     * @param uuid The player's UUID
+     * @return The loaded (or already cached) tag
+     */
+    public PlayerTag loadPlayer(UUID uuid) {
+        PlayerTag cached = playerTags.get(uuid);
+        if (cached != null) {
+            metrics.recordCacheHit();
+            return cached;
+        }
+        // Unsaved changes win over what is currently in storage
+        PlayerTag tag = saveQueue.getPending(uuid);
+        if (tag == null) {
+            metrics.recordCacheMiss();
             try {
-                dataFile.createNewFile();
+                tag = storage.load(uuid);
             } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not create playerdata.yml", e);
+                plugin.getLogger().log(Level.WARNING, "Could not load tag for " + uuid, e);
             }
         }
-        dataConfig = YamlConfiguration.loadConfiguration(dataFile);
+        if (tag == null) {
+            tag = newTag();
+        }
+        PlayerTag existing = playerTags.putIfAbsent(uuid, tag);
+        return existing != null ? existing : tag;
     }
     
     /**
-     * Loads all player tags from the data file
+     * Loads an online player's tag off the main thread, then works out
+     * their granted tags and repaints them. Repeated calls while a load
+     * is running are merged.
+     * 
+     * @param uuid The player's UUID
      */
-    private void loadAllTags() {
-        ConfigurationSection players = dataConfig.getConfigurationSection("players");
-        if (players == null) {
+    private void loadPlayerAsync(UUID uuid) {
+        if (!plugin.isEnabled() || !loading.add(uuid)) {
             return;
         }
-        
-        for (String uuidString : players.getKeys(false)) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
             try {
-                UUID uuid = UUID.fromString(uuidString);
-                String tagText = players.getString(uuidString + ".text", "");
-                String colorName = players.getString(uuidString + ".color", "GRAY");
-                boolean enabled = players.getBoolean(uuidString + ".enabled", false);
-                
-                ChatColor color = ChatColor.valueOf(colorName);
-                PlayerTag tag = new PlayerTag(tagText, color, enabled);
-                playerTags.put(uuid, tag);
-            } catch (IllegalArgumentException e) {
-                plugin.getLogger().warning("Invalid data for player " + uuidString);
+                loadPlayer(uuid);
+            } finally {
+                loading.remove(uuid);
             }
+            runOnMain(() -> {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null && player.isOnline()) {
+                    refreshGrantedTags(player);
+                    applyTagAppearance(player);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Drops a player's tag from memory. Pending changes stay queued and are
+     * still seen by {@link #loadPlayer(UUID)} until they are written.
+     * 
+     * @param uuid The player's UUID
+     */
+    public void unloadPlayer(UUID uuid) {
+        if (lazyLoading) {
+            playerTags.remove(uuid);
         }
-        
-        plugin.getLogger().info("Loaded " + playerTags.size() + " player tags");
     }
     
     /**
-     * Saves all player tags to the data file
+     * Gets a snapshot of the tags of every stored player, with in-memory
+     * state taking precedence over storage
+     * 
+     * @return All known tags by player UUID
      */
-    public void saveAllTags() {
-        for (Map.Entry<UUID, PlayerTag> entry : playerTags.entrySet()) {
-            UUID uuid = entry.getKey();
-            PlayerTag tag = entry.getValue();
-            
-            dataConfig.set("players." + uuid + ".text", tag.getTagText());
-            dataConfig.set("players." + uuid + ".color", tag.getTagColor().name());
-            dataConfig.set("players." + uuid + ".enabled", tag.isEnabled());
+    private Map<UUID, PlayerTag> getAllStoredTags() {
+        if (!lazyLoading) {
+            return new HashMap<>(playerTags);
+        }
+        Map<UUID, PlayerTag> all;
+        try {
+            all = loadStored();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not load stored tags", e);
+            all = new HashMap<>();
+        }
+        all.putAll(saveQueue.getPendingSnapshot());
+        all.putAll(playerTags);
+        return all;
+    }
+    
+    /**
+     * @return An empty, disabled tag in the configured default color
+     */
+    private PlayerTag newTag() {
+        return new PlayerTag("", settings.getDefaultColor(), false);
+    }
+    
+    /**
+     * Atomically replaces a loaded player's tag and queues the new snapshot
+     * for saving. Readers on other threads see either the old or the new
+     * tag, never a mix of both.
+     * 
+     * @param uuid The player's UUID
+     * @param change Function producing the new tag from the current one
+     * @return The new tag
+     */
+    private PlayerTag update(UUID uuid, UnaryOperator<PlayerTag> change) {
+        loadPlayer(uuid);
+        return playerTags.compute(uuid, (k, current) -> {
+            PlayerTag base = current != null ? current : newTag();
+            PlayerTag updated = stamp(base, change.apply(base));
+            // Committed inside compute so snapshots leave in update order
+            commit(uuid, updated);
+            return updated;
+        });
+    }
+    
+    /**
+     * Gives a changed tag the next version. Versions follow the wall clock
+     * so the latest change wins across servers, but always increase.
+     * 
+     * @param base The tag before the change
+     * @param updated The changed tag
+     * @return The changed tag with its new version
+     */
+    private static PlayerTag stamp(PlayerTag base, PlayerTag updated) {
+        return updated.withVersion(Math.max(base.getVersion() + 1, System.currentTimeMillis()));
+    }
+    
+    /**
+     * Writes every stored tag, including unsaved changes, to a YAML file in
+     * the playerdata.yml layout. Blocks, so call it off the main thread.
+     * 
+     * @param yamlFile Target file
+     * @return Number of exported tags
+     * @throws IOException if the file could not be written
+     */
+    public int exportToYaml(File yamlFile) throws IOException {
+        Map<UUID, PlayerTag> all = getAllStoredTags();
+        TagStorageMigrator.exportToYaml(all, yamlFile, plugin.getLogger());
+        return all.size();
+    }
+    
+    /**
+     * Queues a changed tag for saving and sends it to the other servers
+     * 
+     * @param uuid The player's UUID
+     * @param tag The changed tag
+     */
+    private void commit(UUID uuid, PlayerTag tag) {
+        store(uuid, tag);
+        if (syncBus != null) {
+            syncBus.publish(new TagDelta(nodeId, uuid, tag));
+        }
+    }
+    
+    /**
+     * Queues a changed tag for saving and updates the search index
+     * 
+     * @param uuid The player's UUID
+     * @param tag The changed tag
+     */
+    private void store(UUID uuid, PlayerTag tag) {
+        saveQueue.enqueue(uuid, tag);
+        index.update(uuid, tag);
+    }
+    
+    /**
+     * Searches all stored tags
+     * 
+     * @param query Search criteria
+     * @param page Zero-based page number
+     * @param pageSize Entries per page
+     * @return The page, or null while the index is still being built
+     */
+    public TagIndex.Page searchTags(TagQuery query, int page, int pageSize) {
+        return index.isReady() ? index.find(query, page, pageSize) : null;
+    }
+    
+    /**
+     * Applies a change received from another server if it is newer than
+     * what this server has. Called on the sync thread.
+     * 
+     * @param delta The received change
+     */
+    private void applyRemote(TagDelta delta) {
+        UUID uuid = delta.getUuid();
+        boolean[] applied = {false};
+        PlayerTag loaded = playerTags.computeIfPresent(uuid, (k, current) -> {
+            if (!delta.isNewerThan(current, nodeId)) {
+                return current;
+            }
+            store(uuid, delta.getTag());
+            applied[0] = true;
+            // Granted tags are local to this server
+            return delta.getTag().withGranted(current.getGranted());
+        });
+        if (loaded == null) {
+            // Not online here, only keep the local copy in storage current
+            PlayerTag stored = saveQueue.getPending(uuid);
+            if (stored == null) {
+                try {
+                    stored = storage.load(uuid);
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Could not load tag for " + uuid, e);
+                    return;
+                }
+            }
+            if (stored == null || delta.isNewerThan(stored, nodeId)) {
+                store(uuid, delta.getTag());
+            }
+        } else if (applied[0]) {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null) {
+                    applyTagAppearance(player);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Starts a background job that applies a change to every stored tag
+     * matching a condition.
+     * <p>
+     * Loaded players are changed in chunks as the job goes, so what they
+     * see stays consistent. Changes to players that are not loaded are
+     * collected and handed to the save queue in one batch at the end, also
+     * when the job is cancelled. Online players' appearance is refreshed
+     * afterwards within the per-tick budget.
+     * 
+     * @param name Short job name
+     * @param filter Which tags to change
+     * @param change Function producing the new tag from the current one
+     * @return The queued job
+     */
+    public BulkJob startBulkUpdate(String name, Predicate<PlayerTag> filter, UnaryOperator<PlayerTag> change) {
+        return jobs.submit(name, job -> {
+            Map<UUID, PlayerTag> all = getAllStoredTags();
+            job.setTotal(all.size());
+            Map<UUID, PlayerTag> offline = new HashMap<>();
+            int inChunk = 0;
+            for (Map.Entry<UUID, PlayerTag> e : all.entrySet()) {
+                if (inChunk == JOB_CHUNK_SIZE) {
+                    job.advance(inChunk);
+                    inChunk = 0;
+                    if (job.isCancelRequested()) {
+                        break;
+                    }
+                }
+                inChunk++;
+                if (!filter.test(e.getValue())) {
+                    continue;
+                }
+                UUID uuid = e.getKey();
+                boolean[] changed = {false};
+                PlayerTag loaded = playerTags.computeIfPresent(uuid, (k, current) -> {
+                    if (!filter.test(current)) {
+                        return current;
+                    }
+                    PlayerTag updated = stamp(current, change.apply(current));
+                    commit(uuid, updated);
+                    changed[0] = true;
+                    return updated;
+                });
+                if (loaded == null) {
+                    offline.put(uuid, e.getValue());
+                } else if (changed[0]) {
+                    job.addChanged(1);
+                }
+            }
+            job.advance(inChunk);
+            job.addChanged(commitOffline(offline, filter, change));
+            if (job.getChanged() > 0) {
+                runOnMain(() -> appearance.queue(Bukkit.getOnlinePlayers()));
+            }
+        });
+    }
+    
+    /**
+     * Commits a bulk change for players that were not loaded while the job
+     * scanned them. Players who joined meanwhile are changed in memory;
+     * the rest go to the save queue as a single batch.
+     * 
+     * @return Number of changed tags
+     */
+    private int commitOffline(Map<UUID, PlayerTag> scanned, Predicate<PlayerTag> filter, UnaryOperator<PlayerTag> change) {
+        Map<UUID, PlayerTag> batch = new HashMap<>();
+        int count = 0;
+        for (Map.Entry<UUID, PlayerTag> e : scanned.entrySet()) {
+            UUID uuid = e.getKey();
+            boolean[] changed = {false};
+            PlayerTag loaded = playerTags.computeIfPresent(uuid, (k, current) -> {
+                if (!filter.test(current)) {
+                    return current;
+                }
+                PlayerTag updated = stamp(current, change.apply(current));
+                commit(uuid, updated);
+                changed[0] = true;
+                return updated;
+            });
+            if (loaded == null) {
+                // A change saved after the scan wins as the base
+                PlayerTag base = e.getValue();
+                PlayerTag pending = saveQueue.getPending(uuid);
+                if (pending != null && pending.getVersion() > base.getVersion()) {
+                    base = pending;
+                }
+                if (filter.test(base)) {
+                    batch.put(uuid, stamp(base, change.apply(base)));
+                }
+            } else if (changed[0]) {
+                count++;
+            }
+        }
+        saveQueue.enqueueAll(batch);
+        for (Map.Entry<UUID, PlayerTag> e : batch.entrySet()) {
+            index.update(e.getKey(), e.getValue());
+            if (syncBus != null) {
+                syncBus.publish(new TagDelta(nodeId, e.getKey(), e.getValue()));
+            }
+        }
+        return count + batch.size();
+    }
+    
+    /**
+     * @return The runner for bulk jobs, for progress queries and cancelling
+     */
+    public BulkJobRunner getJobs() {
+        return jobs;
+    }
+    
+    /**
+     * Stops background saving, writes all pending changes and closes the
+     * storage backend, blocking until done
+     */
+    public void shutdown() {
+        if (syncBus != null) {
+            syncBus.close();
+        }
+        jobs.shutdown();
+        metricsExporter.shutdown();
+        appearance.shutdown();
+        saveQueue.shutdown();
+        storage.close();
+        saveCooldowns();
+    }
+    
+    private void loadCooldowns() {
+        if (cooldownFile == null) {
+            return;
         }
-        
         try {
-            dataConfig.save(dataFile);
+            cooldowns.load(cooldownFile, System.currentTimeMillis());
         } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Could not save playerdata.yml", e);
+            plugin.getLogger().log(Level.WARNING, "Could not load " + cooldownFile.getName(), e);
+        }
+    }
+    
+    private void saveCooldowns() {
+        if (cooldownFile == null) {
+            return;
+        }
+        try {
+            cooldowns.save(cooldownFile, System.currentTimeMillis());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not save " + cooldownFile.getName(), e);
         }
     }
     
     /**
-     * Gets a player's tag
+     * Gets a player's tag without touching storage, so it is safe on the
+     * main and chat threads. Tags are normally loaded during pre-login;
+     * one that is not loaded yet, e.g. after a plugin reload, is loaded in
+     * the background and an empty tag is returned meanwhile.
      * 
      * @param player The player
      * @return The player's tag
      */
     public PlayerTag getTag(Player player) {
-        return playerTags.computeIfAbsent(player.getUniqueId(), k -> new PlayerTag());
+        UUID uuid = player.getUniqueId();
+        PlayerTag tag = playerTags.get(uuid);
+        if (tag != null) {
+            metrics.recordCacheHit();
+            return tag;
+        }
+        tag = saveQueue.getPending(uuid);
+        if (tag != null) {
+            return tag;
+        }
+        loadPlayerAsync(uuid);
+        return newTag();
     }
     
     /**
-     * Sets a player's tag text
+     * Sets a player's tag text and enables the tag
      * 
      * @param player The player
      * @param text The tag text
@@ -122,11 +837,9 @@ public class TagManager {
         if (!isValidTagText(text)) {
             return false;
         }
-        PlayerTag tag = getTag(player);
-        tag.setTagText(text);
+        update(player.getUniqueId(), tag -> tag.withTagText(text).withEnabled(true));
         applyTagAppearance(player);
-        markChanged(player);
-        saveAllTags();
+        markChanged(player, CooldownAction.SET);
         return true;
     }
     
@@ -137,15 +850,13 @@ public class TagManager {
      * @param color The tag color
      * @return true if successful
      */
-    public boolean setTagColor(Player player, ChatColor color) {
-        if (!isValidTagColor(color)) {
+    public boolean setTagColor(Player player, TagColor color) {
+        if (color == null) {
             return false;
         }
-        PlayerTag tag = getTag(player);
-        tag.setTagColor(color);
+        update(player.getUniqueId(), tag -> tag.withTagColor(color));
         applyTagAppearance(player);
-        markChanged(player);
-        saveAllTags();
+        markChanged(player, CooldownAction.COLOR);
         return true;
     }
     
@@ -156,90 +867,189 @@ public class TagManager {
      * @return The new enabled state
      */
     public boolean toggleTag(Player player) {
-        PlayerTag tag = getTag(player);
-        tag.setEnabled(!tag.isEnabled());
+        PlayerTag tag = update(player.getUniqueId(), current -> current.withEnabled(!current.isEnabled()));
         applyTagAppearance(player);
-        saveAllTags();
         return tag.isEnabled();
     }
     
+    /**
+     * Sets or removes a player's tag animation
+     * 
+     * @param player The player
+     * @param animation Name of a configured animation, or empty for none
+     * @return true if successful
+     */
+    public boolean setTagAnimation(Player player, String animation) {
+        if (!animation.isEmpty() && settings.getAnimation(animation) == null) {
+            return false;
+        }
+        update(player.getUniqueId(), tag -> tag.withAnimation(animation));
+        applyTagAppearance(player);
+        return true;
+    }
+    
+    /**
+     * Selects the tags a player shows, in order, and enables the tag
+     * 
+     * @param player The player
+     * @param ids Owned catalogue ids, 0 for the player's own tag
+     * @return true if successful, false if a tag is neither owned nor
+     *         granted or too many are selected
+     */
+    public boolean selectTags(Player player, int[] ids) {
+        TagCatalogue catalogue = settings.getCatalogue();
+        if (ids.length > catalogue.getMaxActive()) {
+            return false;
+        }
+        PlayerTag current = loadPlayer(player.getUniqueId());
+        for (int id : ids) {
+            if (id != 0 && (!ownsTag(current, id) || catalogue.get(id) == null)) {
+                return false;
+            }
+        }
+        update(player.getUniqueId(), tag -> tag.withActive(ids).withEnabled(true));
+        applyTagAppearance(player);
+        return true;
+    }
+    
+    /**
+     * @param tag A player's tag
+     * @param id Catalogue id
+     * @return true if the player owns the tag or is granted it
+     */
+    public static boolean ownsTag(PlayerTag tag, int id) {
+        return tag.getOwned().contains(id) || tag.getGranted().contains(id);
+    }
+    
+    /**
+     * Gives a player a catalogue tag
+     * 
+     * @param player The player
+     * @param id Catalogue id
+     * @return false if the player already owns it
+     */
+    public boolean grantTag(Player player, int id) {
+        if (loadPlayer(player.getUniqueId()).getOwned().contains(id)) {
+            return false;
+        }
+        update(player.getUniqueId(), tag -> tag.withOwned(tag.getOwned().with(id)));
+        return true;
+    }
+    
+    /**
+     * Takes a catalogue tag from a player, also deselecting it
+     * 
+     * @param player The player
+     * @param id Catalogue id
+     * @return false if the player does not own it
+     */
+    public boolean revokeTag(Player player, int id) {
+        if (!loadPlayer(player.getUniqueId()).getOwned().contains(id)) {
+            return false;
+        }
+        update(player.getUniqueId(), tag -> {
+            PlayerTag revoked = tag.withOwned(tag.getOwned().without(id));
+            // A tag still granted by a permission stays selected
+            return tag.getGranted().contains(id) ? revoked
+                : revoked.withActive(Arrays.stream(tag.getActive()).filter(active -> active != id).toArray());
+        });
+        applyTagAppearance(player);
+        return true;
+    }
+    
     /**
      * Clears a player's tag, removing the text and disabling the tag
      * 
      * @param player The player
      */
     public void clearTag(Player player) {
-        PlayerTag tag = getTag(player);
-        tag.setTagText("");
-        tag.setEnabled(false);
+        update(player.getUniqueId(), tag -> tag.withTagText("").withEnabled(false));
         applyTagAppearance(player);
-        markChanged(player);
-        saveAllTags();
+        markChanged(player, CooldownAction.CLEAR);
     }
-
+    
     // Cooldown helpers
-    public boolean canChangeTag(Player player) {
+    
+    /**
+     * Checks whether a player may perform an action. The cooldown lookup
+     * comes first so permissions are only checked while on cooldown.
+     * 
+     * @param player The player
+     * @param action The action
+     * @return true if not on cooldown or allowed to bypass it
+     */
+    public boolean canChangeTag(Player player, CooldownAction action) {
+        if (cooldowns.getRemainingMillis(player.getUniqueId(), action, System.currentTimeMillis()) == 0L) {
+            return true;
+        }
         if (player.hasPermission("chattags.admin") || player.hasPermission("chattags.bypass.cooldown")) {
             return true;
         }
-        long last = lastChangeAt.getOrDefault(player.getUniqueId(), 0L);
-        long cooldownMs = getChangeCooldownSeconds() * 1000L;
-        return System.currentTimeMillis() - last >= cooldownMs;
+        metrics.recordCooldownRejection();
+        return false;
     }
-
-    public long getRemainingCooldownSeconds(Player player) {
-        long last = lastChangeAt.getOrDefault(player.getUniqueId(), 0L);
-        long cooldownMs = getChangeCooldownSeconds() * 1000L;
-        long remaining = (last + cooldownMs - System.currentTimeMillis() + 999) / 1000;
-        return Math.max(0, remaining);
+    
+    /**
+     * Takes a tag change from the player's and the server's rate limit,
+     * right before the change is submitted
+     * 
+     * @param player The player
+     * @return Whether the change may go ahead
+     */
+    public MutationLimiter.Result acquireChange(Player player) {
+        TagSettings current = settings;
+        boolean bypass = player.hasPermission("chattags.admin") || player.hasPermission("chattags.bypass.cooldown");
+        return limiter.acquire(player.getUniqueId(), current.getRateLimitBurst(),
+            current.getRateLimitRefillMillis(), bypass);
     }
-
-    public void markChanged(Player player) {
-        lastChangeAt.put(player.getUniqueId(), System.currentTimeMillis());
+    
+    /**
+     * @param player The player
+     * @return Seconds until the player's rate limit allows another change
+     */
+    public long getRateLimitWaitSeconds(Player player) {
+        TagSettings current = settings;
+        long wait = limiter.getWaitMillis(player.getUniqueId(), current.getRateLimitBurst(),
+            current.getRateLimitRefillMillis());
+        return Math.max(1L, (wait + 999) / 1000);
     }
-
-    public int getChangeCooldownSeconds() {
-        return plugin.getConfig().getInt("tag-settings.change-cooldown-seconds", 30);
+    
+    public long getRemainingCooldownSeconds(Player player, CooldownAction action) {
+        long remaining = cooldowns.getRemainingMillis(player.getUniqueId(), action, System.currentTimeMillis());
+        return (remaining + 999) / 1000;
     }
-
+    
+    public void markChanged(Player player, CooldownAction action) {
+        cooldowns.start(player.getUniqueId(), action, settings.getCooldownMillis(action), System.currentTimeMillis());
+    }
+    
     /**
-     * Applies the tag appearance to the player's tab list name
+     * Applies the tag appearance to the player's tab list name and team,
+     * deferred to the main thread when called from elsewhere. While the
+     * server is busy the update is queued and spread over the next ticks.
      * 
      * @param player The player
      */
     public void applyTagAppearance(Player player) {
-        PlayerTag tag = getTag(player);
-        String prefix = tag.getFormattedTag();
-        String baseName = player.getName();
-        String listName = prefix.isEmpty() ? baseName : prefix + " " + baseName;
-        try {
-            player.setPlayerListName(listName);
-        } catch (Exception ignored) {
-            player.setPlayerListName(baseName);
+        if (limiter.isUnderPressure()) {
+            runOnMain(() -> appearance.queue(Collections.singleton(player)));
+        } else if (Bukkit.isPrimaryThread()) {
+            appearance.apply(player);
+        } else {
+            runOnMain(() -> {
+                if (player.isOnline()) {
+                    appearance.apply(player);
+                }
+            });
         }
-        applyScoreboardTeam(player, tag);
     }
-
-    private void applyScoreboardTeam(Player player, PlayerTag tag) {
-        Scoreboard sb = Bukkit.getScoreboardManager().getMainScoreboard();
-        String raw = player.getUniqueId().toString().replace("-", "");
-        String teamName = ("ct_" + raw).substring(0, Math.min(16, ("ct_" + raw).length()));
-        Team team = sb.getTeam(teamName);
-        if (team == null) {
-            try {
-                team = sb.registerNewTeam(teamName);
-            } catch (IllegalArgumentException ignored) {
-                team = sb.getTeam(teamName);
-            }
-        }
-        if (team == null) return;
-        if (!team.hasEntry(player.getName())) {
-            team.addEntry(player.getName());
+    
+    private void runOnMain(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, task);
         }
-        ChatColor color = (!tag.isEnabled() || tag.getTagText().isEmpty()) ? ChatColor.WHITE : tag.getTagColor();
-        try { team.setColor(color); } catch (Throwable ignored) { /* older APIs */ }
-        String pfx = (!tag.isEnabled() || tag.getTagText().isEmpty()) ? "" : tag.getFormattedTag() + " ";
-        try { team.setPrefix(pfx); } catch (Throwable ignored) { /* 16-char limit on older */ }
     }
     
     /**
@@ -248,111 +1058,59 @@ public class TagManager {
      * @param text The text to validate
      * @return true if valid
      */
-    private boolean isValidTagText(String text) {
-        int maxLength = plugin.getConfig().getInt("tag-settings.max-length", 16);
-        int minLength = plugin.getConfig().getInt("tag-settings.min-length", 1);
-        
-        if (text.length() < minLength || text.length() > maxLength) {
-            return false;
-        }
-        
-        // Check for disallowed characters
-        String allowedPattern = plugin.getConfig().getString("tag-settings.allowed-pattern", "[a-zA-Z0-9_\\s]+");
-        if (!text.matches(allowedPattern)) {
-            return false;
-        }
-        
-        return true;
-    }
-    
-    /**
-     * Validates tag color
-     * 
-     * @param color The color to validate
-     * @return true if valid
-     */
-    private boolean isValidTagColor(ChatColor color) {
-        return color.isColor();
+    public boolean isValidTagText(String text) {
+        return settings.isValidTagText(text);
     }
     
     /**
-     * Parses a color from a string
+     * Parses a color from a string: a color name, {@code #rrggbb} or a
+     * gradient like {@code #ff0000:#0000ff}
      * 
      * @param colorString The color string
-     * @return The ChatColor, or null if invalid
+     * @return The color, or null if invalid
      */
-    public ChatColor parseColor(String colorString) {
-        try {
-            ChatColor color = ChatColor.valueOf(colorString.toUpperCase());
-            return isValidTagColor(color) ? color : null;
-        } catch (IllegalArgumentException e) {
-            return null;
-        }
+    public TagColor parseColor(String colorString) {
+        return TagColor.parse(colorString);
     }
     
     /**
-     * Gets the maximum tag length from config
+     * Gets the maximum tag length from the settings
      * 
      * @return Maximum tag length
      */
     public int getMaxTagLength() {
-        return plugin.getConfig().getInt("tag-settings.max-length", 16);
+        return settings.getMaxLength();
     }
     
     /**
-     * Gets the minimum tag length from config
+     * Gets the minimum tag length from the settings
      * 
      * @return Minimum tag length
      */
     public int getMinTagLength() {
-        return plugin.getConfig().getInt("tag-settings.min-length", 1);
+        return settings.getMinLength();
     }
-
-    public int clearAllTags() {
-        int count = 0;
-        for (Map.Entry<UUID, PlayerTag> e : playerTags.entrySet()) {
-            PlayerTag t = e.getValue();
-            if (!t.getTagText().isEmpty() || t.isEnabled()) {
-                t.setTagText("");
-                t.setEnabled(false);
-                count++;
-            }
-        }
-        saveAllTags();
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            applyTagAppearance(p);
-        }
-        return count;
+    
+    /**
+     * Starts a job clearing every stored tag
+     * 
+     * @return The queued job
+     */
+    public BulkJob clearAllTags() {
+        return startBulkUpdate("clear-all", t -> !t.getTagText().isEmpty() || t.isEnabled(),
+            t -> t.withTagText("").withEnabled(false));
     }
-
-    public int disableAllTags() {
-        int count = 0;
-        for (Map.Entry<UUID, PlayerTag> e : playerTags.entrySet()) {
-            PlayerTag t = e.getValue();
-            if (t.isEnabled()) {
-                t.setEnabled(false);
-                count++;
-            }
-        }
-        saveAllTags();
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            applyTagAppearance(p);
-        }
-        return count;
+    
+    /**
+     * Starts a job disabling every stored tag
+     * 
+     * @return The queued job
+     */
+    public BulkJob disableAllTags() {
+        return startBulkUpdate("disable-all", PlayerTag::isEnabled, t -> t.withEnabled(false));
     }
-
+    
     public void removeScoreboardTeamEntry(Player player) {
-        try {
-            Scoreboard sb = Bukkit.getScoreboardManager().getMainScoreboard();
-            String raw = player.getUniqueId().toString().replace("-", "");
-            String teamName = ("ct_" + raw).substring(0, Math.min(16, ("ct_" + raw).length()));
-            Team team = sb.getTeam(teamName);
-            if (team != null) {
-                team.removeEntry(player.getName());
-                if (team.getEntries().isEmpty()) {
-                    try { team.unregister(); } catch (Throwable ignored) {}
-                }
-            }
-        } catch (Throwable ignored) {}
+        appearance.remove(player);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package com.johannfullhd.chattags.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of
+ * HdrHistogram.
+ * <p>
+ * Values are grouped by power of two and each power of two is split into
+ * 16 linear sub-buckets, so every recorded value lands in a bucket at most
+ * about 6% wider than the value itself, from nanoseconds up to hours, in a
+ * fixed 7.5 KiB array. Recording is a few bit operations and one atomic
+ * increment.
+ */
+public class LatencyHistogram {
+    
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+    
+    /**
+     * Records one value
+     * 
+     * @param nanos Duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+    
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (magnitude - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+    
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (magnitude - SUB_BITS);
+        return lower + (1L << (magnitude - SUB_BITS)) - 1;
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    /**
+     * @return Sum of all recorded values in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+    
+    /**
+     * @return Largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * Gets the value below which the given fraction of recorded values fall
+     * 
+     * @param quantile Fraction between 0 and 1
+     * @return Upper bound of the matching bucket in nanoseconds, 0 if empty
+     */
+    public long getQuantile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
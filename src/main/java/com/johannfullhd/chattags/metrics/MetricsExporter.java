@@ -0,0 +1,114 @@
+package com.johannfullhd.chattags.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Publishes metrics in the Prometheus text format, either as a file that
+ * is rewritten periodically (for the node exporter's textfile collector)
+ * or over a small local HTTP endpoint
+ */
+public class MetricsExporter {
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    private final MetricsRegistry registry;
+    private final Logger logger;
+    private ScheduledExecutorService fileWriter;
+    private HttpServer server;
+    private ExecutorService httpExecutor;
+    
+    public MetricsExporter(MetricsRegistry registry, Logger logger) {
+        this.registry = registry;
+        this.logger = logger;
+    }
+    
+    /**
+     * Rewrites a file with the current metrics at a fixed interval
+     * 
+     * @param file Target file
+     * @param intervalSeconds Seconds between writes
+     */
+    public void startFile(File file, long intervalSeconds) {
+        fileWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ChatTags-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1L, intervalSeconds);
+        fileWriter.scheduleWithFixedDelay(() -> writeFile(file.toPath()), interval, interval, TimeUnit.SECONDS);
+    }
+    
+    private void writeFile(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, registry.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write metrics to " + file, e);
+        }
+    }
+    
+    /**
+     * Serves the metrics at {@code /metrics}
+     * 
+     * @param bind Address to listen on
+     * @param port Port to listen on
+     * @throws IOException if the port could not be bound
+     */
+    public void startHttp(String bind, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        server.createContext("/metrics", exchange -> {
+            try {
+                byte[] body = registry.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        httpExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ChatTags-Metrics-HTTP");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(httpExecutor);
+        server.start();
+        logger.info("Serving metrics on http://" + bind + ":" + port + "/metrics");
+    }
+    
+    /**
+     * Stops the file writer and the HTTP endpoint
+     */
+    public void shutdown() {
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+        }
+        if (server != null) {
+            server.stop(0);
+            httpExecutor.shutdownNow();
+        }
+    }
+}
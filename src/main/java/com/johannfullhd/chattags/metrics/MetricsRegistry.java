@@ -0,0 +1,103 @@
+package com.johannfullhd.chattags.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and histograms that can be rendered in the
+ * Prometheus text format. Metrics are registered once at startup; the hot
+ * paths keep direct references and never look anything up by name.
+ */
+public class MetricsRegistry {
+    
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    
+    private final List<Metric> metrics = new ArrayList<>();
+    
+    private static final class Metric {
+        
+        private final String name;
+        private final String help;
+        private final LongSupplier value;
+        private final LatencyHistogram histogram;
+        private final boolean counter;
+        
+        Metric(String name, String help, LongSupplier value, LatencyHistogram histogram, boolean counter) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+            this.histogram = histogram;
+            this.counter = counter;
+        }
+    }
+    
+    /**
+     * Registers a monotonically increasing counter
+     * 
+     * @param name Metric name, ending in _total
+     * @param help Description
+     * @return The counter to increment
+     */
+    public synchronized LongAdder counter(String name, String help) {
+        LongAdder adder = new LongAdder();
+        metrics.add(new Metric(name, help, adder::sum, null, true));
+        return adder;
+    }
+    
+    /**
+     * Registers a value that is read whenever metrics are exported
+     * 
+     * @param name Metric name
+     * @param help Description
+     * @param value Supplies the current value
+     */
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        metrics.add(new Metric(name, help, value, null, false));
+    }
+    
+    /**
+     * Registers a latency histogram, exported as a summary in seconds
+     * 
+     * @param name Metric name, ending in _seconds
+     * @param help Description
+     * @return The histogram to record into
+     */
+    public synchronized LatencyHistogram histogram(String name, String help) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        metrics.add(new Metric(name, help, null, histogram, false));
+        return histogram;
+    }
+    
+    /**
+     * Renders all metrics in the Prometheus text exposition format
+     * 
+     * @return The rendered metrics
+     */
+    public synchronized String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics) {
+            out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            if (metric.histogram == null) {
+                out.append("# TYPE ").append(metric.name).append(metric.counter ? " counter\n" : " gauge\n");
+                out.append(metric.name).append(' ').append(metric.value.getAsLong()).append('\n');
+                continue;
+            }
+            LatencyHistogram histogram = metric.histogram;
+            out.append("# TYPE ").append(metric.name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(metric.name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getQuantile(quantile))).append('\n');
+            }
+            out.append(metric.name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+            out.append(metric.name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+    
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,40 @@
+package com.johannfullhd.chattags.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events per second.
+ * <p>
+ * Reports the count of the last full second, so marking stays a single
+ * striped increment that is safe on the chat threads. Counts that race
+ * with the start of a new second may land in the neighbouring one.
+ */
+public final class RateMeter {
+    
+    private final AtomicLong second = new AtomicLong(System.nanoTime() / 1_000_000_000L);
+    private final LongAdder current = new LongAdder();
+    private volatile long last;
+    
+    public void mark() {
+        roll(System.nanoTime() / 1_000_000_000L);
+        current.increment();
+    }
+    
+    /**
+     * @return Events counted in the last full second
+     */
+    public long perSecond() {
+        roll(System.nanoTime() / 1_000_000_000L);
+        return last;
+    }
+    
+    private void roll(long now) {
+        long previous = second.get();
+        if (now != previous && second.compareAndSet(previous, now)) {
+            long count = current.sumThenReset();
+            // Nothing was counted in the seconds skipped in between
+            last = now == previous + 1 ? count : 0L;
+        }
+    }
+}
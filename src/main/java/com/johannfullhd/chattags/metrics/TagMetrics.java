@@ -0,0 +1,133 @@
+package com.johannfullhd.chattags.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Instruments for the ChatTags hot paths
+ */
+public class TagMetrics {
+    
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final LatencyHistogram chatFormat = registry.histogram("chattags_chat_format_seconds",
+        "Time spent setting the chat format per message");
+    private final LatencyHistogram save = registry.histogram("chattags_save_seconds",
+        "Time spent writing one batch of changed tags");
+    private final LongAdder savedTags = registry.counter("chattags_saved_tags_total",
+        "Number of tag snapshots written to storage");
+    private final LongAdder saveFailures = registry.counter("chattags_save_failures_total",
+        "Number of batches that could not be written");
+    private final LatencyHistogram loadAll = registry.histogram("chattags_load_all_seconds",
+        "Time spent loading every stored tag");
+    private final LatencyHistogram appearance = registry.histogram("chattags_appearance_update_seconds",
+        "Time spent applying a tag to the tab list and nametag");
+    private final LongAdder appearanceSends = registry.counter("chattags_appearance_sends_total",
+        "Number of list name and nametag changes sent to clients");
+    private final LongAdder cacheHits = registry.counter("chattags_cache_hits_total",
+        "Tag lookups served from memory");
+    private final LongAdder cacheMisses = registry.counter("chattags_cache_misses_total",
+        "Tag lookups that had to go to storage");
+    private final LongAdder cooldownRejections = registry.counter("chattags_cooldown_rejections_total",
+        "Tag changes rejected because of a cooldown");
+    private final LatencyHistogram grantResolve = registry.histogram("chattags_grant_resolve_seconds",
+        "Time spent checking the tag permissions of one player");
+    private final RateMeter chatRate = new RateMeter();
+    
+    public TagMetrics() {
+        registry.gauge("chattags_chat_messages_per_second", "Chat messages in the last second", chatRate::perSecond);
+    }
+    
+    /**
+     * @return The registry, for adding gauges and exporting
+     */
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+    
+    public void recordChatFormat(long nanos) {
+        chatFormat.record(nanos);
+        chatRate.mark();
+    }
+    
+    public void recordSave(long nanos, int tags) {
+        save.record(nanos);
+        savedTags.add(tags);
+    }
+    
+    public void recordSaveFailure() {
+        saveFailures.increment();
+    }
+    
+    public void recordLoadAll(long nanos) {
+        loadAll.record(nanos);
+    }
+    
+    /**
+     * @param nanos Time spent applying the tag
+     * @param sends Number of changes that had to be sent
+     */
+    public void recordAppearance(long nanos, int sends) {
+        appearance.record(nanos);
+        appearanceSends.add(sends);
+    }
+    
+    public void recordCacheHit() {
+        cacheHits.increment();
+    }
+    
+    public void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+    
+    public void recordCooldownRejection() {
+        cooldownRejections.increment();
+    }
+    
+    public void recordGrantResolve(long nanos) {
+        grantResolve.record(nanos);
+    }
+    
+    /**
+     * @return Chat messages in the last full second
+     */
+    public long getChatPerSecond() {
+        return chatRate.perSecond();
+    }
+    
+    /**
+     * Summarizes the metrics for /tag stats
+     * 
+     * @return Chat lines
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add(timing("Chat format", chatFormat));
+        lines.add(timing("Save batch", save) + ChatColor.GRAY + ", " + savedTags.sum() + " tags, "
+            + saveFailures.sum() + " failed");
+        lines.add(timing("Load all", loadAll));
+        lines.add(timing("Appearance", appearance) + ChatColor.GRAY + ", " + appearanceSends.sum() + " sent");
+        lines.add(timing("Tag permissions", grantResolve));
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        lines.add(ChatColor.YELLOW + "Cache hit rate: " + ChatColor.WHITE
+            + (total == 0 ? "-" : String.format(Locale.ROOT, "%.1f%%", hits * 100.0 / total))
+            + ChatColor.GRAY + " (" + total + " lookups)");
+        lines.add(ChatColor.YELLOW + "Cooldown rejections: " + ChatColor.WHITE + cooldownRejections.sum());
+        return lines;
+    }
+    
+    private static String timing(String label, LatencyHistogram histogram) {
+        return ChatColor.YELLOW + label + ": " + ChatColor.WHITE + histogram.getCount() + "x"
+            + ChatColor.GRAY + " p50 " + millis(histogram.getQuantile(0.5))
+            + " p99 " + millis(histogram.getQuantile(0.99))
+            + " max " + millis(histogram.getMax());
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,177 @@
+package com.johannfullhd.chattags.models;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Conversions between packed RGB colors ({@code 0xRRGGBB}), hex strings,
+ * legacy colors and Minecraft color codes.
+ * <p>
+ * Hex colors are written as color code {@code x} followed by one color
+ * code per hex digit, which clients since 1.16 understand in chat, the tab
+ * list and team prefixes. Player text may use {@code &} codes, including
+ * {@code &#rrggbb}.
+ */
+public final class ColorCodec {
+    
+    private static final ChatColor[] LEGACY = {
+        ChatColor.BLACK, ChatColor.DARK_BLUE, ChatColor.DARK_GREEN, ChatColor.DARK_AQUA,
+        ChatColor.DARK_RED, ChatColor.DARK_PURPLE, ChatColor.GOLD, ChatColor.GRAY,
+        ChatColor.DARK_GRAY, ChatColor.BLUE, ChatColor.GREEN, ChatColor.AQUA,
+        ChatColor.RED, ChatColor.LIGHT_PURPLE, ChatColor.YELLOW, ChatColor.WHITE
+    };
+    private static final int[] LEGACY_RGB = {
+        0x000000, 0x0000AA, 0x00AA00, 0x00AAAA,
+        0xAA0000, 0xAA00AA, 0xFFAA00, 0xAAAAAA,
+        0x555555, 0x5555FF, 0x55FF55, 0x55FFFF,
+        0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF
+    };
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Pattern CODE = Pattern.compile("&(#[0-9a-fA-F]{6}|[0-9a-fk-orA-FK-OR])");
+    
+    private ColorCodec() {
+    }
+    
+    /**
+     * @param color A legacy color
+     * @return Its packed RGB value, or -1 for format codes
+     */
+    public static int toRgb(ChatColor color) {
+        for (int i = 0; i < LEGACY.length; i++) {
+            if (LEGACY[i] == color) {
+                return LEGACY_RGB[i];
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @param rgb Packed RGB value
+     * @return The closest of the 16 legacy colors
+     */
+    public static ChatColor nearestLegacy(int rgb) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < LEGACY_RGB.length; i++) {
+            int dr = ((rgb >> 16) & 0xFF) - ((LEGACY_RGB[i] >> 16) & 0xFF);
+            int dg = ((rgb >> 8) & 0xFF) - ((LEGACY_RGB[i] >> 8) & 0xFF);
+            int db = (rgb & 0xFF) - (LEGACY_RGB[i] & 0xFF);
+            int distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return LEGACY[best];
+    }
+    
+    /**
+     * Parses {@code #rrggbb}
+     *
+     * @param hex The hex string
+     * @return Packed RGB value, or -1 if invalid
+     */
+    public static int parseHex(String hex) {
+        if (hex.length() != 7 || hex.charAt(0) != '#') {
+            return -1;
+        }
+        int rgb = 0;
+        for (int i = 1; i < 7; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            rgb = (rgb << 4) | digit;
+        }
+        return rgb;
+    }
+    
+    /**
+     * @param rgb Packed RGB value
+     * @return The color as {@code #RRGGBB}
+     */
+    public static String toHex(int rgb) {
+        return String.format(Locale.ROOT, "#%06X", rgb & 0xFFFFFF);
+    }
+    
+    /**
+     * Appends the Minecraft color code for an RGB color
+     *
+     * @param builder Target
+     * @param rgb Packed RGB value
+     */
+    public static void appendColor(StringBuilder builder, int rgb) {
+        builder.append(ChatColor.COLOR_CHAR).append('x');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            builder.append(ChatColor.COLOR_CHAR).append(HEX[(rgb >> shift) & 0xF]);
+        }
+    }
+    
+    /**
+     * Gets the color at a position of a gradient through evenly spaced stops
+     *
+     * @param stops Packed RGB stops, at least one
+     * @param index Position, from 0 to {@code count - 1}
+     * @param count Number of positions
+     * @return Packed RGB value
+     */
+    public static int interpolate(int[] stops, int index, int count) {
+        if (stops.length == 1 || count <= 1) {
+            return stops[0];
+        }
+        double position = (double) index / (count - 1) * (stops.length - 1);
+        int from = Math.min((int) position, stops.length - 2);
+        double t = position - from;
+        int a = stops[from];
+        int b = stops[from + 1];
+        int r = (int) Math.round(((a >> 16) & 0xFF) + t * (((b >> 16) & 0xFF) - ((a >> 16) & 0xFF)));
+        int g = (int) Math.round(((a >> 8) & 0xFF) + t * (((b >> 8) & 0xFF) - ((a >> 8) & 0xFF)));
+        int bl = (int) Math.round((a & 0xFF) + t * ((b & 0xFF) - (a & 0xFF)));
+        return (r << 16) | (g << 8) | bl;
+    }
+    
+    /**
+     * @param text Player text
+     * @return true if it contains {@code &} color or format codes
+     */
+    public static boolean hasCodes(String text) {
+        return text.indexOf('&') >= 0 && CODE.matcher(text).find();
+    }
+    
+    /**
+     * @param text Player text
+     * @return The text without {@code &} codes
+     */
+    public static String strip(String text) {
+        return hasCodes(text) ? CODE.matcher(text).replaceAll("") : text;
+    }
+    
+    /**
+     * Turns {@code &} codes into Minecraft color codes
+     *
+     * @param text Player text
+     * @return The translated text
+     */
+    public static String translate(String text) {
+        if (!hasCodes(text)) {
+            return text;
+        }
+        Matcher matcher = CODE.matcher(text);
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        int last = 0;
+        while (matcher.find()) {
+            builder.append(text, last, matcher.start());
+            String code = matcher.group(1);
+            if (code.charAt(0) == '#') {
+                appendColor(builder, parseHex(code));
+            } else {
+                builder.append(ChatColor.COLOR_CHAR).append(Character.toLowerCase(code.charAt(0)));
+            }
+            last = matcher.end();
+        }
+        return builder.append(text, last, text.length()).toString();
+    }
+}
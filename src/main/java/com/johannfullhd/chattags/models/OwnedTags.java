@@ -0,0 +1,119 @@
+package com.johannfullhd.chattags.models;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable set of catalogue tag IDs a player owns, held as a bitset.
+ * <p>
+ * IDs range from 1 to {@link TagCatalogue#MAX_ID}, so the whole set fits
+ * in at most 16 longs and is stored as those.
+ */
+public final class OwnedTags {
+    
+    public static final OwnedTags NONE = new OwnedTags(new long[0]);
+    
+    private final long[] words;
+    
+    private OwnedTags(long[] words) {
+        this.words = words;
+    }
+    
+    /**
+     * @param words Bitset words as written by {@link #toLongArray()}
+     * @return The set
+     */
+    public static OwnedTags fromLongArray(long[] words) {
+        long[] trimmed = BitSet.valueOf(words).toLongArray();
+        return trimmed.length == 0 ? NONE : new OwnedTags(trimmed);
+    }
+    
+    /**
+     * @param bytes Bitset bytes as written by {@link #toByteArray()}
+     * @return The set
+     */
+    public static OwnedTags fromByteArray(byte[] bytes) {
+        return fromLongArray(BitSet.valueOf(bytes).toLongArray());
+    }
+    
+    /**
+     * @param ids Catalogue IDs
+     * @return The set
+     */
+    public static OwnedTags of(int... ids) {
+        OwnedTags owned = NONE;
+        for (int id : ids) {
+            owned = owned.with(id);
+        }
+        return owned;
+    }
+    
+    public boolean contains(int id) {
+        int word = id >>> 6;
+        return word < words.length && (words[word] & (1L << id)) != 0;
+    }
+    
+    /**
+     * @param id Catalogue ID
+     * @return A set that also contains the ID
+     */
+    public OwnedTags with(int id) {
+        if (id < 1 || id > TagCatalogue.MAX_ID) {
+            throw new IllegalArgumentException("Invalid tag id " + id);
+        }
+        if (contains(id)) {
+            return this;
+        }
+        long[] copy = Arrays.copyOf(words, Math.max(words.length, (id >>> 6) + 1));
+        copy[id >>> 6] |= 1L << id;
+        return new OwnedTags(copy);
+    }
+    
+    /**
+     * @param id Catalogue ID
+     * @return A set without the ID
+     */
+    public OwnedTags without(int id) {
+        if (!contains(id)) {
+            return this;
+        }
+        long[] copy = words.clone();
+        copy[id >>> 6] &= ~(1L << id);
+        return fromLongArray(copy);
+    }
+    
+    /**
+     * @return The IDs in ascending order
+     */
+    public int[] ids() {
+        return BitSet.valueOf(words).stream().toArray();
+    }
+    
+    public boolean isEmpty() {
+        return words.length == 0;
+    }
+    
+    /**
+     * @return The bitset words, without trailing zero words
+     */
+    public long[] toLongArray() {
+        return words.clone();
+    }
+    
+    /**
+     * @return The bitset as little-endian bytes, without trailing zero bytes
+     */
+    public byte[] toByteArray() {
+        return BitSet.valueOf(words).toByteArray();
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof OwnedTags && Arrays.equals(words, ((OwnedTags) o).words));
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
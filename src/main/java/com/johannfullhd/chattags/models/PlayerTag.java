@@ -2,22 +2,44 @@ package com.johannfullhd.chattags.models;
 
 import org.bukkit.ChatColor;
 
+import com.johannfullhd.chattags.config.ChatTemplate;
+
 /**
- * Represents a player's custom chat tag
+ * Represents a player's custom chat tag.
+ * <p>
+ * Instances are immutable: changes create a new snapshot through the
+ * {@code with*} methods, so a tag can be shared freely between the main
+ * thread, async chat threads and the saver thread. The text and color are
+ * held as an interned {@link RenderedTag}, so players with the same tag
+ * share one string and one rendered format. The optional animation is the
+ * name of an animation from the config, empty for a static tag.
+ * <p>
+ * Besides their own tag, players can own tags from the {@link TagCatalogue},
+ * kept as a bitset of ids, and show one or more of them in order. Which
+ * tag is shown is resolved once per catalogue and cached, so switching
+ * only swaps the rendered prefix the chat and tab list use. Catalogue tags
+ * granted by permissions are kept here too, so resolving them never checks
+ * a permission; they are worked out again by the tag manager and are
+ * never saved or synced.
  */
-public class PlayerTag {
+public final class PlayerTag {
+    
+    private static final int[] NO_ACTIVE = new int[0];
     
-    private String tagText;
-    private ChatColor tagColor;
-    private boolean enabled;
+    private final RenderedTag rendered;
+    private final boolean enabled;
+    private final long version;
+    private final String animation;
+    private final OwnedTags owned;
+    private final int[] active;
+    private final OwnedTags granted;
+    private volatile Display display;
     
     /**
      * Creates a new PlayerTag with default values
      */
     public PlayerTag() {
-        this.tagText = "";
-        this.tagColor = ChatColor.GRAY;
-        this.enabled = false;
+        this("", ChatColor.GRAY, false);
     }
     
     /**
@@ -28,45 +50,200 @@ public class PlayerTag {
      * @param enabled Whether the tag is enabled
      */
     public PlayerTag(String tagText, ChatColor tagColor, boolean enabled) {
-        this.tagText = tagText;
-        this.tagColor = tagColor;
+        this(tagText, tagColor, enabled, 0L);
+    }
+    
+    /**
+     * Creates a new PlayerTag with specified values and version
+     * 
+     * @param tagText The tag text
+     * @param tagColor The tag color
+     * @param enabled Whether the tag is enabled
+     * @param version Version of this state, higher wins when servers sync
+     */
+    public PlayerTag(String tagText, ChatColor tagColor, boolean enabled, long version) {
+        this(tagText, TagColor.of(tagColor), enabled, version, "");
+    }
+    
+    /**
+     * Creates a new PlayerTag with specified values, version and animation
+     * 
+     * @param tagText The tag text
+     * @param tagColor The tag color
+     * @param enabled Whether the tag is enabled
+     * @param version Version of this state, higher wins when servers sync
+     * @param animation Name of the tag animation, empty for none
+     */
+    public PlayerTag(String tagText, TagColor tagColor, boolean enabled, long version, String animation) {
+        this(RenderedTag.of(tagText, tagColor), enabled, version, animation, OwnedTags.NONE, NO_ACTIVE, OwnedTags.NONE, null);
+    }
+    
+    private PlayerTag(RenderedTag rendered, boolean enabled, long version, String animation,
+                      OwnedTags owned, int[] active, OwnedTags granted, Display display) {
+        this.rendered = rendered;
         this.enabled = enabled;
+        this.version = version;
+        // Only a handful of animations exist, so share their names
+        this.animation = animation.isEmpty() ? "" : animation.intern();
+        this.owned = owned;
+        this.active = active;
+        this.granted = granted;
+        this.display = display;
     }
     
     /**
-     * Gets the formatted tag for display
+     * Gets the player's own formatted tag
      * 
      * @return Formatted tag string
      */
     public String getFormattedTag() {
-        if (!enabled || tagText.isEmpty()) {
-            return "";
+        return enabled ? rendered.getFormattedTag() : "";
+    }
+    
+    /**
+     * Gets the tag the player shows: their own tag, the selected
+     * catalogue tags or their rank tag, see {@link TagCatalogue#display}
+     * 
+     * @param catalogue The current catalogue
+     * @return The rendered tag, resolved once per catalogue; its text is
+     *         empty if nothing is shown
+     */
+    public RenderedTag getDisplay(TagCatalogue catalogue) {
+        Display cached = display;
+        if (cached != null && cached.catalogue == catalogue) {
+            return cached.tag;
         }
-        return tagColor + "[" + tagText + "]" + ChatColor.RESET;
+        RenderedTag tag = catalogue.display(rendered, enabled, owned, granted, active);
+        display = new Display(catalogue, tag);
+        return tag;
+    }
+    
+    /**
+     * Gets the formatted tag the player shows
+     * 
+     * @param catalogue The current catalogue
+     * @return Formatted tag string, empty if nothing is shown
+     */
+    public String getDisplayedTag(TagCatalogue catalogue) {
+        return getDisplay(catalogue).getFormattedTag();
     }
     
-    // Getters and Setters
+    /**
+     * @param catalogue The current catalogue
+     * @return true if the player's own tag is shown, not a catalogue tag
+     */
+    public boolean isShowingOwnTag(TagCatalogue catalogue) {
+        return enabled && getDisplay(catalogue) == rendered;
+    }
+    
+    /**
+     * Gets the chat format string for this tag
+     * 
+     * @param template The configured chat template
+     * @param catalogue The current catalogue
+     * @return Format string for {@code AsyncPlayerChatEvent#setFormat}
+     */
+    public String getChatFormat(ChatTemplate template, TagCatalogue catalogue) {
+        return getDisplay(catalogue).getChatFormat(template);
+    }
+    
+    // Getters and copy-on-write modifiers
     public String getTagText() {
-        return tagText;
+        return rendered.getText();
     }
     
-    public void setTagText(String tagText) {
-        this.tagText = tagText;
+    public PlayerTag withTagText(String tagText) {
+        return new PlayerTag(RenderedTag.of(tagText, rendered.getColor()), enabled, version, animation, owned, active, granted, null);
     }
     
-    public ChatColor getTagColor() {
-        return tagColor;
+    public TagColor getTagColor() {
+        return rendered.getColor();
     }
     
-    public void setTagColor(ChatColor tagColor) {
-        this.tagColor = tagColor;
+    public PlayerTag withTagColor(TagColor tagColor) {
+        return new PlayerTag(RenderedTag.of(rendered.getText(), tagColor), enabled, version, animation, owned, active, granted, null);
     }
     
     public boolean isEnabled() {
         return enabled;
     }
     
-    public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
+    public PlayerTag withEnabled(boolean enabled) {
+        return new PlayerTag(rendered, enabled, version, animation, owned, active, granted, null);
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public PlayerTag withVersion(long version) {
+        return new PlayerTag(rendered, enabled, version, animation, owned, active, granted, display);
+    }
+    
+    public String getAnimation() {
+        return animation;
+    }
+    
+    public PlayerTag withAnimation(String animation) {
+        return new PlayerTag(rendered, enabled, version, animation, owned, active, granted, display);
+    }
+    
+    public OwnedTags getOwned() {
+        return owned;
+    }
+    
+    public PlayerTag withOwned(OwnedTags owned) {
+        return new PlayerTag(rendered, enabled, version, animation, owned, active, granted, null);
+    }
+    
+    /**
+     * @return Active tags in order, 0 for the player's own tag; empty when
+     *         only the own tag is shown
+     */
+    public int[] getActive() {
+        return active.clone();
+    }
+    
+    /**
+     * @param active Active tags in order, 0 for the player's own tag
+     * @return A tag showing them
+     */
+    public PlayerTag withActive(int... active) {
+        if (active.length > TagCatalogue.MAX_ACTIVE) {
+            throw new IllegalArgumentException("At most " + TagCatalogue.MAX_ACTIVE + " active tags");
+        }
+        for (int id : active) {
+            if (id < 0 || id > TagCatalogue.MAX_ID) {
+                throw new IllegalArgumentException("Invalid tag id " + id);
+            }
+        }
+        // Only the own tag is the same as nothing selected
+        int[] copy = active.length == 0 || (active.length == 1 && active[0] == 0) ? NO_ACTIVE : active.clone();
+        return new PlayerTag(rendered, enabled, version, animation, owned, copy, granted, null);
+    }
+    
+    /**
+     * @return Catalogue tags granted by permissions, not saved
+     */
+    public OwnedTags getGranted() {
+        return granted;
+    }
+    
+    public PlayerTag withGranted(OwnedTags granted) {
+        return new PlayerTag(rendered, enabled, version, animation, owned, active, granted, null);
+    }
+    
+    /**
+     * Tag resolved for one catalogue snapshot
+     */
+    private static final class Display {
+        
+        private final TagCatalogue catalogue;
+        private final RenderedTag tag;
+        
+        Display(TagCatalogue catalogue, RenderedTag tag) {
+            this.catalogue = catalogue;
+            this.tag = tag;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,221 @@
+package com.johannfullhd.chattags.models;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.ChatColor;
+
+import com.johannfullhd.chattags.config.ChatTemplate;
+
+/**
+ * Shared, pre-rendered text and color of a tag.
+ * <p>
+ * Instances are interned: every {@link PlayerTag} with the same text and
+ * color points to the same RenderedTag, so common tags like "VIP" are
+ * stored and rendered once no matter how many players use them. The pool
+ * only holds weak references, so a combination nobody uses any more is
+ * released by the garbage collector.
+ * <p>
+ * The colored tag, including RGB colors, gradients and {@code &} codes in
+ * the text, is rendered once here. The chat format for the configured
+ * {@link ChatTemplate} is rendered the first time the tag chats and reused
+ * until the template changes.
+ * <p>
+ * Players showing several tags at once get a joined instance from
+ * {@link #join}, which is not interned.
+ */
+public final class RenderedTag {
+    
+    private static final Map<Key, Ref> POOL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<RenderedTag> RELEASED = new ReferenceQueue<>();
+    
+    private final String text;
+    private final TagColor color;
+    private final String formattedTag;
+    private final String escapedTag;
+    private volatile CachedFormat chatFormat;
+    
+    private RenderedTag(String text, TagColor color) {
+        this.text = text;
+        this.color = color;
+        this.formattedTag = render(text, color);
+        // Escaped here so a % in the text never reaches String.format as a specifier
+        this.escapedTag = formattedTag.replace("%", "%%");
+    }
+    
+    private RenderedTag(String text, TagColor color, String formattedTag) {
+        this.text = text;
+        this.color = color;
+        this.formattedTag = formattedTag;
+        this.escapedTag = formattedTag.replace("%", "%%");
+    }
+    
+    private static String render(String text, TagColor color) {
+        if (text.isEmpty()) {
+            return "";
+        }
+        if (!ColorCodec.hasCodes(text)) {
+            return color.colorize("[" + text + "]") + ChatColor.RESET;
+        }
+        // Codes in the text take over from where they appear
+        return color.startCode() + "[" + ColorCodec.translate(text) + color.endCode() + "]" + ChatColor.RESET;
+    }
+    
+    /**
+     * Gets the shared instance for a text and color, creating it if needed
+     *
+     * @param text The tag text
+     * @param color The tag color
+     * @return The interned instance
+     */
+    public static RenderedTag of(String text, TagColor color) {
+        expungeReleased();
+        Key key = new Key(text, color);
+        Ref ref = POOL.get(key);
+        RenderedTag tag = ref != null ? ref.get() : null;
+        if (tag != null) {
+            return tag;
+        }
+        RenderedTag created = new RenderedTag(text, color);
+        Ref createdRef = new Ref(key, created);
+        while (true) {
+            ref = POOL.putIfAbsent(key, createdRef);
+            if (ref == null) {
+                return created;
+            }
+            tag = ref.get();
+            if (tag != null) {
+                return tag;
+            }
+            // Released but not expunged yet, take its place
+            if (POOL.replace(key, ref, createdRef)) {
+                return created;
+            }
+        }
+    }
+    
+    /**
+     * Joins several tags into one, separated by spaces
+     *
+     * @param parts The tags, in display order
+     * @param count Number of tags to use from the start of the array
+     * @return A new instance; its text and color are those of the first tag
+     */
+    public static RenderedTag join(RenderedTag[] parts, int count) {
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                formatted.append(' ');
+            }
+            formatted.append(parts[i].formattedTag);
+        }
+        return new RenderedTag(parts[0].text, parts[0].color, formatted.toString());
+    }
+    
+    /**
+     * @return Number of distinct text and color combinations in use
+     */
+    public static int poolSize() {
+        expungeReleased();
+        return POOL.size();
+    }
+    
+    private static void expungeReleased() {
+        Ref ref;
+        while ((ref = (Ref) RELEASED.poll()) != null) {
+            POOL.remove(ref.key, ref);
+        }
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public TagColor getColor() {
+        return color;
+    }
+    
+    /**
+     * @return The colored tag in brackets, empty for an empty text
+     */
+    public String getFormattedTag() {
+        return formattedTag;
+    }
+    
+    /**
+     * @return The formatted tag with % escaped for use in a format string
+     */
+    public String getEscapedTag() {
+        return escapedTag;
+    }
+    
+    /**
+     * Gets the chat format for this tag, rendering it only when the
+     * template differs from the one used last time
+     *
+     * @param template The chat template
+     * @return Format string for {@code AsyncPlayerChatEvent#setFormat}
+     */
+    public String getChatFormat(ChatTemplate template) {
+        CachedFormat cached = chatFormat;
+        if (cached != null && cached.template == template) {
+            return cached.format;
+        }
+        String format = escapedTag.isEmpty() ? template.getUntaggedFormat() : template.render(escapedTag);
+        chatFormat = new CachedFormat(template, format);
+        return format;
+    }
+    
+    private static final class Key {
+        
+        private final String text;
+        private final TagColor color;
+        private final int hash;
+        
+        Key(String text, TagColor color) {
+            this.text = text;
+            this.color = color;
+            this.hash = 31 * text.hashCode() + color.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return color.equals(other.color) && text.equals(other.text);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    private static final class CachedFormat {
+        
+        private final ChatTemplate template;
+        private final String format;
+        
+        CachedFormat(ChatTemplate template, String format) {
+            this.template = template;
+            this.format = format;
+        }
+    }
+    
+    private static final class Ref extends WeakReference<RenderedTag> {
+        
+        private final Key key;
+        
+        Ref(Key key, RenderedTag tag) {
+            super(tag, RELEASED);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.johannfullhd.chattags.models;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Server-defined tags from the {@code catalogue} section of config.yml.
+ * <p>
+ * Players do not store the text of a catalogue tag, only its numeric id
+ * in their {@link OwnedTags}, and every catalogue tag is rendered once
+ * here for all players showing it. A new snapshot is built on every
+ * reload, which also tells cached displays to resolve again.
+ * <p>
+ * Players with the permission {@code chattags.tag.<name>} of a tag are
+ * granted it without owning it. While they show nothing else, the granted
+ * tag with the highest priority is shown as their rank tag.
+ */
+public final class TagCatalogue {
+    
+    /** Highest catalogue id, ids start at 1 */
+    public static final int MAX_ID = 1023;
+    
+    /** Most tags a player can show at once */
+    public static final int MAX_ACTIVE = 8;
+    
+    /** Prefix of the permission that grants a tag, followed by its name */
+    public static final String PERMISSION_PREFIX = "chattags.tag.";
+    
+    public static final TagCatalogue EMPTY = new TagCatalogue(new Entry[1], Collections.emptyMap(), 1, false);
+    
+    private final Entry[] byId;
+    private final Map<String, Entry> byKey;
+    private final Entry[] byPriority;
+    private final int maxActive;
+    private final boolean rankOverOwn;
+    
+    private TagCatalogue(Entry[] byId, Map<String, Entry> byKey, int maxActive, boolean rankOverOwn) {
+        this.byId = byId;
+        this.byKey = byKey;
+        this.maxActive = maxActive;
+        this.rankOverOwn = rankOverOwn;
+        this.byPriority = byKey.values().stream()
+            .sorted(Comparator.comparingInt(Entry::getPriority).reversed().thenComparingInt(Entry::getId))
+            .toArray(Entry[]::new);
+    }
+    
+    /**
+     * Reads the catalogue from its config section
+     *
+     * @param section The {@code catalogue} section, may be null
+     * @param logger Logger for invalid entries
+     * @return The catalogue
+     */
+    public static TagCatalogue fromConfig(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return EMPTY;
+        }
+        int maxActive = Math.max(1, Math.min(MAX_ACTIVE, section.getInt("max-active", 2)));
+        boolean rankOverOwn = section.getBoolean("rank-tags-over-own", false);
+        ConfigurationSection tags = section.getConfigurationSection("tags");
+        if (tags == null) {
+            return new TagCatalogue(new Entry[1], Collections.emptyMap(), maxActive, rankOverOwn);
+        }
+        
+        Map<String, Entry> byKey = new LinkedHashMap<>();
+        Entry[] byId = new Entry[MAX_ID + 1];
+        int highest = 0;
+        for (String name : tags.getKeys(false)) {
+            ConfigurationSection tag = tags.getConfigurationSection(name);
+            String key = name.toLowerCase(Locale.ROOT);
+            if (tag == null) {
+                continue;
+            }
+            int id = tag.getInt("id", 0);
+            if (id < 1 || id > MAX_ID) {
+                logger.warning("Catalogue tag '" + key + "' needs an id from 1 to " + MAX_ID + ", skipping it");
+                continue;
+            }
+            if (byId[id] != null) {
+                logger.warning("Catalogue tag '" + key + "' reuses id " + id + " of '" + byId[id].key + "', skipping it");
+                continue;
+            }
+            String text = tag.getString("text", "");
+            if (text.isEmpty()) {
+                logger.warning("Catalogue tag '" + key + "' has no text, skipping it");
+                continue;
+            }
+            TagColor color = TagColor.parse(tag.getString("color", "GRAY"));
+            if (color == null) {
+                logger.warning("Invalid color for catalogue tag '" + key + "', using GRAY");
+                color = TagColor.of(ChatColor.GRAY);
+            }
+            Entry entry = new Entry(id, key, RenderedTag.of(text, color), tag.getInt("priority", 0));
+            byId[id] = entry;
+            byKey.put(key, entry);
+            highest = Math.max(highest, id);
+        }
+        return new TagCatalogue(Arrays.copyOf(byId, highest + 1), Collections.unmodifiableMap(byKey), maxActive, rankOverOwn);
+    }
+    
+    /**
+     * @param id Catalogue id
+     * @return The entry, or null if unknown
+     */
+    public Entry get(int id) {
+        return id > 0 && id < byId.length ? byId[id] : null;
+    }
+    
+    /**
+     * @param input A catalogue key or numeric id
+     * @return The entry, or null if unknown
+     */
+    public Entry find(String input) {
+        Entry entry = byKey.get(input.toLowerCase(Locale.ROOT));
+        if (entry != null) {
+            return entry;
+        }
+        try {
+            return get(Integer.parseInt(input));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Works out which tag a player shows. In order: the selected tags if
+     * the tag is enabled, the player's own tag if enabled, the granted
+     * tag with the highest priority, otherwise nothing. With
+     * {@code rank-tags-over-own} the granted tag comes before the own tag.
+     *
+     * @param custom The player's own tag
+     * @param enabled Whether the player's tag is enabled
+     * @param owned Catalogue ids the player owns
+     * @param granted Catalogue ids the player has the permission for
+     * @param active Selected tags in order, 0 for the player's own tag
+     * @return The tag to show: the player's own tag, a shared catalogue
+     *         tag, several joined together, or one with an empty text
+     */
+    public RenderedTag display(RenderedTag custom, boolean enabled, OwnedTags owned, OwnedTags granted, int[] active) {
+        if (enabled && active.length > 0) {
+            RenderedTag[] parts = new RenderedTag[Math.min(active.length, maxActive)];
+            int count = 0;
+            for (int i = 0; i < active.length && count < parts.length; i++) {
+                int id = active[i];
+                if (id == 0) {
+                    if (!custom.getText().isEmpty()) {
+                        parts[count++] = custom;
+                    }
+                } else if ((owned.contains(id) || granted.contains(id)) && get(id) != null) {
+                    parts[count++] = get(id).rendered;
+                }
+            }
+            if (count > 0) {
+                return count == 1 ? parts[0] : RenderedTag.join(parts, count);
+            }
+        }
+        boolean showOwn = enabled && !custom.getText().isEmpty();
+        if (showOwn && !rankOverOwn) {
+            return custom;
+        }
+        if (!granted.isEmpty()) {
+            for (Entry entry : byPriority) {
+                if (granted.contains(entry.id)) {
+                    return entry.rendered;
+                }
+            }
+        }
+        return showOwn || custom.getText().isEmpty() ? custom : RenderedTag.of("", custom.getColor());
+    }
+    
+    /**
+     * @return Catalogue tags in config order
+     */
+    public Collection<Entry> getEntries() {
+        return byKey.values();
+    }
+    
+    /**
+     * @return true if granted tags are shown instead of the player's own tag
+     */
+    public boolean isRankOverOwn() {
+        return rankOverOwn;
+    }
+    
+    /**
+     * @return How many tags a player can show at once
+     */
+    public int getMaxActive() {
+        return maxActive;
+    }
+    
+    public boolean isEmpty() {
+        return byKey.isEmpty();
+    }
+    
+    /**
+     * A catalogue tag
+     */
+    public static final class Entry {
+        
+        private final int id;
+        private final String key;
+        private final RenderedTag rendered;
+        private final int priority;
+        private final String permission;
+        
+        private Entry(int id, String key, RenderedTag rendered, int priority) {
+            this.id = id;
+            this.key = key;
+            this.rendered = rendered;
+            this.priority = priority;
+            this.permission = PERMISSION_PREFIX + key;
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public RenderedTag getRendered() {
+            return rendered;
+        }
+        
+        /**
+         * @return Priority as a rank tag, higher wins
+         */
+        public int getPriority() {
+            return priority;
+        }
+        
+        /**
+         * @return The permission that grants this tag
+         */
+        public String getPermission() {
+            return permission;
+        }
+    }
+}
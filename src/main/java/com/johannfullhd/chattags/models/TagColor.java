@@ -0,0 +1,230 @@
+package com.johannfullhd.chattags.models;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Color of a tag: one of the 16 named colors, an RGB color or a gradient.
+ * <p>
+ * Colors are held as packed RGB stops ({@code 0xRRGGBB}). Every color also
+ * has a legacy color, the named color itself or the closest one, used
+ * where only those work such as the team color. Immutable; named colors
+ * are shared instances.
+ */
+public final class TagColor {
+    
+    /** Maximum number of gradient stops */
+    public static final int MAX_STOPS = 8;
+    
+    private static final TagColor[] NAMED = new TagColor[ChatColor.values().length];
+    
+    static {
+        for (ChatColor color : ChatColor.values()) {
+            int rgb = ColorCodec.toRgb(color);
+            if (rgb >= 0) {
+                NAMED[color.ordinal()] = new TagColor(new int[] {rgb}, color, color);
+            }
+        }
+    }
+    
+    private final int[] stops;
+    private final ChatColor named;
+    private final ChatColor legacy;
+    
+    private TagColor(int[] stops, ChatColor named, ChatColor legacy) {
+        this.stops = stops;
+        this.named = named;
+        this.legacy = legacy;
+    }
+    
+    /**
+     * @param color A named color
+     * @return The shared instance for it
+     * @throws IllegalArgumentException if the color is a format code
+     */
+    public static TagColor of(ChatColor color) {
+        TagColor named = NAMED[color.ordinal()];
+        if (named == null) {
+            throw new IllegalArgumentException("Not a color: " + color);
+        }
+        return named;
+    }
+    
+    /**
+     * @param stops Packed RGB colors, one for a single color or up to
+     *              {@link #MAX_STOPS} for a gradient
+     * @return The color
+     */
+    public static TagColor rgb(int... stops) {
+        if (stops.length == 0 || stops.length > MAX_STOPS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_STOPS + " colors required");
+        }
+        int[] copy = new int[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            copy[i] = stops[i] & 0xFFFFFF;
+        }
+        return new TagColor(copy, null, ColorCodec.nearestLegacy(copy[0]));
+    }
+    
+    /**
+     * Parses user input: a color name, {@code #rrggbb}, or a gradient of
+     * hex colors separated by {@code :}, e.g. {@code #ff0000:#0000ff}
+     *
+     * @param input The input
+     * @return The color, or null if invalid
+     */
+    public static TagColor parse(String input) {
+        if (input.isEmpty()) {
+            return null;
+        }
+        if (input.charAt(0) != '#') {
+            try {
+                return NAMED[ChatColor.valueOf(input.toUpperCase(Locale.ROOT)).ordinal()];
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        String[] parts = input.split(":", -1);
+        if (parts.length > MAX_STOPS) {
+            return null;
+        }
+        int[] stops = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            stops[i] = ColorCodec.parseHex(parts[i]);
+            if (stops[i] < 0) {
+                return null;
+            }
+        }
+        return rgb(stops);
+    }
+    
+    /**
+     * Reads a color written by {@link #encode()}
+     *
+     * @param encoded The stored form
+     * @return The color
+     * @throws IllegalArgumentException if the value is invalid
+     */
+    public static TagColor decode(String encoded) {
+        TagColor color = parse(encoded);
+        if (color == null) {
+            throw new IllegalArgumentException("Invalid color: " + encoded);
+        }
+        return color;
+    }
+    
+    /**
+     * @return Stored form: the name of a named color, otherwise the hex
+     *         stops separated by {@code :}
+     */
+    public String encode() {
+        if (named != null) {
+            return named.name();
+        }
+        StringBuilder builder = new StringBuilder(stops.length * 8);
+        for (int i = 0; i < stops.length; i++) {
+            if (i > 0) {
+                builder.append(':');
+            }
+            builder.append(ColorCodec.toHex(stops[i]));
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * Colors plain text, letter by letter for a gradient
+     *
+     * @param text Text without color codes
+     * @return The colored text
+     */
+    public String colorize(String text) {
+        if (named != null) {
+            return named + text;
+        }
+        StringBuilder builder = new StringBuilder(text.length() * (stops.length > 1 ? 15 : 1) + 14);
+        if (stops.length == 1) {
+            ColorCodec.appendColor(builder, stops[0]);
+            return builder.append(text).toString();
+        }
+        int count = text.codePointCount(0, text.length());
+        int index = 0;
+        for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+            ColorCodec.appendColor(builder, ColorCodec.interpolate(stops, index++, count));
+            builder.appendCodePoint(text.codePointAt(i));
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * @return Color code of the first stop
+     */
+    public String startCode() {
+        return codeFor(stops[0]);
+    }
+    
+    /**
+     * @return Color code of the last stop
+     */
+    public String endCode() {
+        return codeFor(stops[stops.length - 1]);
+    }
+    
+    private String codeFor(int rgb) {
+        if (named != null) {
+            return named.toString();
+        }
+        StringBuilder builder = new StringBuilder(14);
+        ColorCodec.appendColor(builder, rgb);
+        return builder.toString();
+    }
+    
+    /**
+     * @return The named color, or null for RGB colors and gradients
+     */
+    public ChatColor getNamed() {
+        return named;
+    }
+    
+    /**
+     * @return The named color, or the one closest to the first stop
+     */
+    public ChatColor getLegacy() {
+        return legacy;
+    }
+    
+    public int getStopCount() {
+        return stops.length;
+    }
+    
+    /**
+     * @param index Stop index
+     * @return Packed RGB value of the stop
+     */
+    public int getStop(int index) {
+        return stops[index];
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TagColor)) {
+            return false;
+        }
+        TagColor other = (TagColor) o;
+        return named == other.named && Arrays.equals(stops, other.stops);
+    }
+    
+    @Override
+    public int hashCode() {
+        return named != null ? named.hashCode() : Arrays.hashCode(stops);
+    }
+    
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,205 @@
+package com.johannfullhd.chattags.search;
+
+import java.util.AbstractMap;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bukkit.ChatColor;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * In-memory secondary indexes over all stored tags: by text, by color and
+ * by enabled state.
+ * <p>
+ * Only players with tag text are indexed. Updates are applied per player
+ * in version order, so a bulk build racing with live changes never
+ * overwrites a newer tag. Until the build is done, the version of a
+ * cleared tag is kept as a tombstone so the build cannot add it back.
+ * Each index bucket is sorted by UUID, which keeps pages stable while
+ * nothing changes.
+ */
+public class TagIndex {
+    
+    private final Map<UUID, PlayerTag> indexed = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> removed = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<UUID>> byText = new ConcurrentSkipListMap<>();
+    private final Map<ChatColor, Set<UUID>> byColor = new EnumMap<>(ChatColor.class);
+    private final Set<UUID> enabled = new ConcurrentSkipListSet<>();
+    private final Set<UUID> all = new ConcurrentSkipListSet<>();
+    private volatile boolean ready;
+    
+    public TagIndex() {
+        for (ChatColor color : ChatColor.values()) {
+            byColor.put(color, new ConcurrentSkipListSet<>());
+        }
+    }
+    
+    /**
+     * A page of search results
+     */
+    public static final class Page {
+    
+        private final int number;
+        private final List<Map.Entry<UUID, PlayerTag>> entries;
+        private final boolean hasNext;
+    
+        Page(int number, List<Map.Entry<UUID, PlayerTag>> entries, boolean hasNext) {
+            this.number = number;
+            this.entries = entries;
+            this.hasNext = hasNext;
+        }
+    
+        /**
+         * @return Zero-based page number
+         */
+        public int getNumber() {
+            return number;
+        }
+    
+        public List<Map.Entry<UUID, PlayerTag>> getEntries() {
+            return entries;
+        }
+    
+        public boolean hasNext() {
+            return hasNext;
+        }
+    }
+    
+    /**
+     * Adds all given tags and marks the index as ready
+     *
+     * @param tags All stored tags by player UUID
+     */
+    public void build(Map<UUID, PlayerTag> tags) {
+        tags.forEach(this::update);
+        ready = true;
+        // Only the build replays old snapshots
+        removed.clear();
+    }
+    
+    /**
+     * @return true once the initial build has finished
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * @return Number of indexed players
+     */
+    public int size() {
+        return indexed.size();
+    }
+    
+    /**
+     * Moves a player to the buckets of a changed tag. Ignored if the index
+     * already holds a newer version.
+     *
+     * @param uuid The player's UUID
+     * @param tag The player's current tag
+     */
+    public void update(UUID uuid, PlayerTag tag) {
+        indexed.compute(uuid, (k, old) -> {
+            // Runs under the lock of the player's entry, which also guards the tombstone
+            if (old != null && old.getVersion() > tag.getVersion()) {
+                return old;
+            }
+            Long tombstone = old == null ? removed.get(uuid) : null;
+            if (tombstone != null && tombstone > tag.getVersion()) {
+                return null;
+            }
+            if (old != null) {
+                remove(uuid, old);
+            }
+            if (tag.getTagText().isEmpty()) {
+                if (!ready) {
+                    removed.put(uuid, tag.getVersion());
+                }
+                return null;
+            }
+            removed.remove(uuid);
+            add(uuid, tag);
+            return tag;
+        });
+    }
+    
+    private void add(UUID uuid, PlayerTag tag) {
+        synchronized (byText) {
+            byText.computeIfAbsent(textKey(tag), k -> new ConcurrentSkipListSet<>()).add(uuid);
+        }
+        byColor.get(tag.getTagColor().getLegacy()).add(uuid);
+        if (tag.isEnabled()) {
+            enabled.add(uuid);
+        }
+        all.add(uuid);
+    }
+    
+    private void remove(UUID uuid, PlayerTag tag) {
+        String key = textKey(tag);
+        synchronized (byText) {
+            Set<UUID> bucket = byText.get(key);
+            if (bucket != null && bucket.remove(uuid) && bucket.isEmpty()) {
+                byText.remove(key);
+            }
+        }
+        byColor.get(tag.getTagColor().getLegacy()).remove(uuid);
+        enabled.remove(uuid);
+        all.remove(uuid);
+    }
+    
+    private static String textKey(PlayerTag tag) {
+        return TagQuery.searchText(tag);
+    }
+    
+    /**
+     * Finds one page of matching players. Starts from the smallest fitting
+     * index and only walks as far as the requested page.
+     *
+     * @param query Search criteria
+     * @param page Zero-based page number
+     * @param pageSize Entries per page
+     * @return The page, empty past the last result
+     */
+    public Page find(TagQuery query, int page, int pageSize) {
+        List<Map.Entry<UUID, PlayerTag>> entries = candidates(query)
+            .<Map.Entry<UUID, PlayerTag>>map(uuid -> {
+                PlayerTag tag = indexed.get(uuid);
+                return tag != null && query.matches(tag) ? new AbstractMap.SimpleImmutableEntry<>(uuid, tag) : null;
+            })
+            .filter(Objects::nonNull)
+            .skip((long) page * pageSize)
+            .limit(pageSize + 1L)
+            .collect(Collectors.toList());
+        boolean hasNext = entries.size() > pageSize;
+        if (hasNext) {
+            entries.remove(pageSize);
+        }
+        return new Page(page, entries, hasNext);
+    }
+    
+    private Stream<UUID> candidates(TagQuery query) {
+        String prefix = query.getTextPrefix();
+        if (prefix != null) {
+            return byText.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().stream()
+                .flatMap(Set::stream);
+        }
+        if (query.getColor() != null) {
+            return byColor.get(query.getColor()).stream();
+        }
+        if (Boolean.TRUE.equals(query.getEnabled())) {
+            return enabled.stream();
+        }
+        return all.stream();
+    }
+}
@@ -0,0 +1,76 @@
+package com.johannfullhd.chattags.search;
+
+import java.util.Locale;
+
+import org.bukkit.ChatColor;
+
+import com.johannfullhd.chattags.models.ColorCodec;
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Criteria for searching tags, unset criteria match everything
+ */
+public final class TagQuery {
+    
+    private static final TagQuery ALL = new TagQuery(null, null, null);
+    
+    private final String textPrefix;
+    private final ChatColor color;
+    private final Boolean enabled;
+    
+    /**
+     * @param textPrefix Case-insensitive start of the tag text without
+     *        color codes, or null
+     * @param color Tag color, or null; RGB colors match their closest named color
+     * @param enabled Required enabled state, or null
+     */
+    public TagQuery(String textPrefix, ChatColor color, Boolean enabled) {
+        String prefix = textPrefix == null ? "" : ColorCodec.strip(textPrefix).toLowerCase(Locale.ROOT);
+        this.textPrefix = prefix.isEmpty() ? null : prefix;
+        this.color = color;
+        this.enabled = enabled;
+    }
+    
+    /**
+     * @return Query matching every tagged player
+     */
+    public static TagQuery all() {
+        return ALL;
+    }
+    
+    /**
+     * @return Lowercase text prefix without color codes, or null
+     */
+    public String getTextPrefix() {
+        return textPrefix;
+    }
+    
+    public ChatColor getColor() {
+        return color;
+    }
+    
+    public Boolean getEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Checks a tag against all criteria
+     *
+     * @param tag The tag
+     * @return true if the tag matches
+     */
+    public boolean matches(PlayerTag tag) {
+        return (textPrefix == null || searchText(tag).startsWith(textPrefix))
+            && (color == null || tag.getTagColor().getLegacy() == color)
+            && (enabled == null || tag.isEnabled() == enabled);
+    }
+    
+    /**
+     * @param tag The tag
+     * @return The tag text as matched by text prefixes: lowercase and
+     *         without {@code &} color codes
+     */
+    static String searchText(PlayerTag tag) {
+        return ColorCodec.strip(tag.getTagText()).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,184 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Stores all tags in a compact binary snapshot, see {@link TagSnapshot},
+ * plus a journal of the changes made since, see {@link TagJournal}.
+ * <p>
+ * Saving only appends the changed tags to the journal, so its cost does not
+ * grow with the number of stored players. Once the journal holds more
+ * records than the snapshot, it is compacted into a new snapshot on a
+ * background thread. After a failed compaction, e.g. on a full disk, the
+ * next attempt waits from one minute up to half an hour. On startup the
+ * snapshot is read and the journal is replayed on top of it; both are kept
+ * in memory afterwards.
+ */
+public class BinaryTagStorage implements TagStorage {
+    
+    private static final long MIN_COMPACT_RECORDS = 10_000L;
+    private static final long RETRY_BASE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long RETRY_MAX_NANOS = TimeUnit.MINUTES.toNanos(30);
+    
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final Logger logger;
+    private final ExecutorService compactor;
+    private Map<UUID, PlayerTag> tags;
+    private TagJournal journal;
+    private boolean compacting;
+    private int compactFailures;
+    private long compactRetryAt;
+    private final AtomicLong bytesWritten = new AtomicLong();
+    
+    public BinaryTagStorage(File snapshotFile, Logger logger) {
+        this.snapshotFile = snapshotFile.toPath();
+        this.journalFile = this.snapshotFile.resolveSibling(snapshotFile.getName() + ".journal");
+        this.compactingFile = this.snapshotFile.resolveSibling(snapshotFile.getName() + ".journal.old");
+        this.logger = logger;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ChatTags-Compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    private Map<UUID, PlayerTag> tags() throws IOException {
+        if (tags == null) {
+            Map<UUID, PlayerTag> loaded = TagSnapshot.read(snapshotFile);
+            // A journal rotated out by an unfinished compaction is older than the current one
+            boolean unfinished = Files.exists(compactingFile);
+            TagJournal.replay(compactingFile, loaded, logger);
+            long records = TagJournal.replay(journalFile, loaded, logger);
+            if (!TagJournal.isCurrentFormat(journalFile)) {
+                // Written by an older version, fold it into a snapshot of the current format
+                bytesWritten.addAndGet(TagSnapshot.write(snapshotFile, loaded));
+                Files.deleteIfExists(compactingFile);
+                Files.delete(journalFile);
+                unfinished = false;
+                records = 0;
+            }
+            journal = TagJournal.open(journalFile, records);
+            tags = loaded;
+            if (unfinished) {
+                compact();
+            }
+        }
+        return tags;
+    }
+    
+    @Override
+    public synchronized PlayerTag load(UUID uuid) throws IOException {
+        return tags().get(uuid);
+    }
+    
+    @Override
+    public synchronized Map<UUID, PlayerTag> loadAll() throws IOException {
+        return new HashMap<>(tags());
+    }
+    
+    @Override
+    public void save(UUID uuid, PlayerTag tag) throws IOException {
+        saveAll(Collections.singletonMap(uuid, tag));
+    }
+    
+    @Override
+    public synchronized void saveAll(Map<UUID, PlayerTag> changed) throws IOException {
+        Map<UUID, PlayerTag> all = tags();
+        bytesWritten.addAndGet(journal.append(changed));
+        all.putAll(changed);
+        if (!compacting && journal.getRecords() > Math.max(MIN_COMPACT_RECORDS, all.size())
+                && (compactFailures == 0 || System.nanoTime() - compactRetryAt >= 0)) {
+            compact();
+        }
+    }
+    
+    /**
+     * Rotates the journal out and writes a new snapshot in the background.
+     * Until the snapshot is in place, the rotated journal is still replayed
+     * on startup.
+     */
+    private void compact() throws IOException {
+        if (!Files.exists(compactingFile)) {
+            journal.close();
+            Files.move(journalFile, compactingFile);
+            journal = TagJournal.open(journalFile, 0);
+        }
+        compacting = true;
+        Map<UUID, PlayerTag> copy = new HashMap<>(tags);
+        compactor.execute(() -> {
+            boolean done = false;
+            try {
+                bytesWritten.addAndGet(TagSnapshot.write(snapshotFile, copy));
+                Files.deleteIfExists(compactingFile);
+                done = true;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not compact the tag journal, will retry", e);
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                    if (done) {
+                        compactFailures = 0;
+                    } else {
+                        compactFailures++;
+                        compactRetryAt = System.nanoTime()
+                            + Math.min(RETRY_MAX_NANOS, RETRY_BASE_NANOS << Math.min(compactFailures - 1, 5));
+                    }
+                }
+            }
+        });
+    }
+    
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+    
+    @Override
+    public void close() {
+        compactor.shutdown();
+        boolean stopped = false;
+        try {
+            stopped = compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (journal == null) {
+                return;
+            }
+            try {
+                journal.close();
+                if (!stopped) {
+                    // The compactor may still be writing the snapshot, leave the journals for replay
+                    logger.warning("Tag journal compaction is still running, it is replayed on the next start");
+                } else if (journal.getRecords() > 0 || Files.exists(compactingFile)) {
+                    // Leave a single snapshot behind so the next start has nothing to replay
+                    TagSnapshot.write(snapshotFile, tags);
+                    Files.deleteIfExists(compactingFile);
+                    Files.deleteIfExists(journalFile);
+                }
+            } catch (IOException e) {
+                // Nothing is lost, the journal is replayed on the next start
+                logger.log(Level.WARNING, "Could not compact the tag journal on shutdown", e);
+            }
+            journal = null;
+        }
+    }
+}
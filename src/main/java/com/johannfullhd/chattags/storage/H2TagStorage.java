@@ -0,0 +1,171 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagColor;
+
+/**
+ * Stores tags in an embedded H2 database file, one row per player.
+ * Writes touch only the changed rows and are sent as JDBC batches.
+ */
+public class H2TagStorage implements TagStorage {
+    
+    private static final String CREATE_TABLE =
+        "CREATE TABLE IF NOT EXISTS player_tags ("
+        + "uuid UUID PRIMARY KEY, "
+        + "text VARCHAR(255) NOT NULL, "
+        + "color VARCHAR(80) NOT NULL, "
+        + "enabled BOOLEAN NOT NULL, "
+        + "version BIGINT NOT NULL DEFAULT 0, "
+        + "animation VARCHAR(64) NOT NULL DEFAULT '', "
+        + "owned VARBINARY(128) NOT NULL DEFAULT X'', "
+        + "active VARCHAR(64) NOT NULL DEFAULT '')";
+    private static final String ADD_VERSION = "ALTER TABLE player_tags ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0";
+    private static final String WIDEN_COLOR = "ALTER TABLE player_tags ALTER COLUMN color SET DATA TYPE VARCHAR(80)";
+    private static final String ADD_ANIMATION = "ALTER TABLE player_tags ADD COLUMN IF NOT EXISTS animation VARCHAR(64) NOT NULL DEFAULT ''";
+    private static final String ADD_OWNED = "ALTER TABLE player_tags ADD COLUMN IF NOT EXISTS owned VARBINARY(128) NOT NULL DEFAULT X''";
+    private static final String ADD_ACTIVE = "ALTER TABLE player_tags ADD COLUMN IF NOT EXISTS active VARCHAR(64) NOT NULL DEFAULT ''";
+    private static final String SELECT_ONE = "SELECT text, color, enabled, version, animation, owned, active FROM player_tags WHERE uuid = ?";
+    private static final String SELECT_ALL = "SELECT uuid, text, color, enabled, version, animation, owned, active FROM player_tags";
+    private static final String UPSERT = "MERGE INTO player_tags (uuid, text, color, enabled, version, animation, owned, active) KEY (uuid) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private final Logger logger;
+    private final JdbcConnectionPool pool;
+    
+    /**
+     * Opens (and creates if needed) the database
+     * 
+     * @param databaseFile Database file without the ".mv.db" extension
+     * @param poolSize Maximum number of pooled connections
+     * @param logger Logger for data warnings
+     * @throws IOException if the database could not be opened
+     */
+    public H2TagStorage(File databaseFile, int poolSize, Logger logger) throws IOException {
+        this.logger = logger;
+        this.pool = JdbcConnectionPool.create("jdbc:h2:file:" + databaseFile.getAbsolutePath(), "sa", "");
+        this.pool.setMaxConnections(Math.max(1, poolSize));
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            // Tables created before versions, animations, RGB colors and catalogue tags were added
+            statement.execute(ADD_VERSION);
+            statement.execute(ADD_ANIMATION);
+            statement.execute(ADD_OWNED);
+            statement.execute(ADD_ACTIVE);
+            statement.execute(WIDEN_COLOR);
+        } catch (SQLException e) {
+            pool.dispose();
+            throw new IOException("Could not initialize tag database", e);
+        }
+    }
+    
+    @Override
+    public PlayerTag load(UUID uuid) throws IOException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_ONE)) {
+            statement.setObject(1, uuid);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? readTag(uuid, rs, 1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not load tag for " + uuid, e);
+        }
+    }
+    
+    @Override
+    public Map<UUID, PlayerTag> loadAll() throws IOException {
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_ALL);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                UUID uuid = rs.getObject(1, UUID.class);
+                PlayerTag tag = readTag(uuid, rs, 2);
+                if (tag != null) {
+                    tags.put(uuid, tag);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not load tags", e);
+        }
+        return tags;
+    }
+    
+    private PlayerTag readTag(UUID uuid, ResultSet rs, int firstColumn) throws SQLException {
+        try {
+            String text = rs.getString(firstColumn);
+            TagColor color = TagColor.decode(rs.getString(firstColumn + 1));
+            boolean enabled = rs.getBoolean(firstColumn + 2);
+            long version = rs.getLong(firstColumn + 3);
+            String animation = rs.getString(firstColumn + 4);
+            OwnedTags owned = OwnedTags.fromByteArray(rs.getBytes(firstColumn + 5));
+            String active = rs.getString(firstColumn + 6);
+            return new PlayerTag(text, color, enabled, version, animation).withOwned(owned)
+                .withActive(active.isEmpty() ? new int[0] : Arrays.stream(active.split(",")).mapToInt(Integer::parseInt).toArray());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid data for player " + uuid);
+            return null;
+        }
+    }
+    
+    @Override
+    public void save(UUID uuid, PlayerTag tag) throws IOException {
+        saveAll(Collections.singletonMap(uuid, tag));
+    }
+    
+    @Override
+    public void saveAll(Map<UUID, PlayerTag> tags) throws IOException {
+        if (tags.isEmpty()) {
+            return;
+        }
+        try (Connection connection = pool.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT)) {
+                for (Map.Entry<UUID, PlayerTag> entry : tags.entrySet()) {
+                    PlayerTag tag = entry.getValue();
+                    statement.setObject(1, entry.getKey());
+                    statement.setString(2, tag.getTagText());
+                    statement.setString(3, tag.getTagColor().encode());
+                    statement.setBoolean(4, tag.isEnabled());
+                    statement.setLong(5, tag.getVersion());
+                    statement.setString(6, tag.getAnimation());
+                    statement.setBytes(7, tag.getOwned().toByteArray());
+                    statement.setString(8, Arrays.stream(tag.getActive()).mapToObj(Integer::toString).collect(Collectors.joining(",")));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not save " + tags.size() + " tags", e);
+        }
+    }
+    
+    @Override
+    public void close() {
+        pool.dispose();
+    }
+}
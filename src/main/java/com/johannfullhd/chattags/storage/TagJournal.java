@@ -0,0 +1,204 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Append-only journal of tag changes on top of a {@link TagSnapshot}.
+ * <p>
+ * Layout: magic {@code "CTJN"} and format version (int), followed by
+ * snapshot records that each end with a CRC32 of the record. Every
+ * {@link #append} writes one batch and syncs it with a single fsync, so a
+ * whole write-behind batch costs one disk flush (group commit). A record
+ * cut off by a crash fails its checksum and is dropped on replay. Records
+ * use the current snapshot record format; journals of older formats are
+ * still replayed but never appended to.
+ */
+final class TagJournal implements Closeable {
+    
+    private static final int MAGIC = 0x43544A4E; // "CTJN"
+    private static final int FORMAT = TagSnapshot.FORMAT;
+    private static final int HEADER_BYTES = 8;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int BUFFER_BYTES = 1 << 17;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private long records;
+    
+    private TagJournal(FileChannel channel, long records) {
+        this.channel = channel;
+        this.records = records;
+    }
+    
+    /**
+     * Opens a journal for appending, creating it if needed
+     *
+     * @param file Journal file, already replayed
+     * @param records Number of records it holds
+     * @return The open journal
+     * @throws IOException if the file could not be opened
+     */
+    static TagJournal open(Path file, long records) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(FORMAT);
+                header.flip();
+                channel.truncate(0);
+                while (header.hasRemaining()) {
+                    channel.write(header, HEADER_BYTES - header.remaining());
+                }
+                channel.force(true);
+                records = 0;
+            }
+            channel.position(channel.size());
+            return new TagJournal(channel, records);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Checks whether new records can be appended to a journal
+     *
+     * @param file Journal file, may not exist
+     * @return false if the file holds records of an older format
+     * @throws IOException if the file is unreadable
+     */
+    static boolean isCurrentFormat(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_BYTES) {
+            return true;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            in.readInt();
+            return in.readInt() == FORMAT;
+        }
+    }
+    
+    /**
+     * Applies all intact records of a journal to the given map and cuts
+     * off a torn tail left by a crash
+     *
+     * @param file Journal file, may not exist
+     * @param into Map to apply the records to, in write order
+     * @param logger Logger for dropped records
+     * @return Number of records applied
+     * @throws IOException if the file is unreadable or not a journal
+     */
+    static long replay(Path file, Map<UUID, PlayerTag> into, Logger logger) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        if (Files.size(file) < HEADER_BYTES) {
+            return 0;
+        }
+        long records = 0;
+        long valid;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Read onto the heap, a live mapping would make the truncate below fail on Windows
+            ByteBuffer buffer = TagSnapshot.readFully(channel, file);
+            long size = buffer.limit();
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a tag journal: " + file.getFileName());
+            }
+            int format = buffer.getInt();
+            if (format < 1 || format > FORMAT) {
+                throw new IOException("Unsupported journal format " + format + ": " + file.getFileName());
+            }
+            CRC32 crc = new CRC32();
+            Map<UUID, PlayerTag> record = new HashMap<>(2);
+            valid = buffer.position();
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                try {
+                    TagSnapshot.readRecord(buffer, record, format);
+                    int end = buffer.position();
+                    int checksum = buffer.getInt();
+                    crc.reset();
+                    crc.update(buffer.duplicate().position(start).limit(end));
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (IOException | BufferUnderflowException e) {
+                    break;
+                }
+                into.putAll(record);
+                record.clear();
+                valid = buffer.position();
+                records++;
+            }
+            if (valid < size) {
+                logger.warning("Dropped " + (size - valid) + " bytes of incomplete changes from " + file.getFileName());
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return records;
+    }
+    
+    /**
+     * Appends a batch of changes and syncs them to disk
+     *
+     * @param batch Changed tags by player UUID
+     * @return Number of bytes appended
+     * @throws IOException if the batch could not be written
+     */
+    long append(Map<UUID, PlayerTag> batch) throws IOException {
+        long start = channel.position();
+        try {
+            for (Map.Entry<UUID, PlayerTag> entry : batch.entrySet()) {
+                byte[] text = TagSnapshot.encodeText(entry.getKey(), entry.getValue());
+                byte[] animation = TagSnapshot.encodeAnimation(entry.getKey(), entry.getValue());
+                if (buffer.remaining() < TagSnapshot.recordBytes(entry.getValue(), text, animation) + CHECKSUM_BYTES) {
+                    TagSnapshot.drain(channel, buffer);
+                }
+                int recordStart = buffer.position();
+                TagSnapshot.putRecord(buffer, entry.getKey(), entry.getValue(), text, animation);
+                crc.reset();
+                crc.update(buffer.duplicate().position(recordStart).limit(buffer.position()));
+                buffer.putInt((int) crc.getValue());
+            }
+            TagSnapshot.drain(channel, buffer);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            // Leave no partial batch behind, the queue retries all of it
+            buffer.clear();
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException ignored) {}
+            throw e;
+        }
+        records += batch.size();
+        return channel.position() - start;
+    }
+    
+    /**
+     * @return Number of records in the journal
+     */
+    long getRecords() {
+        return records;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,281 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.ChatColor;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagCatalogue;
+import com.johannfullhd.chattags.models.TagColor;
+
+/**
+ * Reads and writes the versioned binary snapshot format.
+ * <p>
+ * Layout, big endian: magic {@code "CTSN"}, format version (int), record
+ * count (int), then per record the UUID (16 bytes), tag version (8 bytes),
+ * color (1 byte), flags (1 byte), the UTF-8 text prefixed with its length
+ * (unsigned short) and, since format 2, the UTF-8 animation name prefixed
+ * with its length (unsigned byte). The color byte is the ordinal of a
+ * named color, or since format 3 {@code 0x80} plus the number of RGB
+ * stops that follow it as ints. Since format 4 the record ends with the
+ * owned catalogue tags, a count (unsigned byte) of bitset words (longs),
+ * and the active tags, a count (unsigned byte) of ids (unsigned shorts).
+ * Older formats are still read.
+ */
+public final class TagSnapshot {
+    
+    private static final int MAGIC = 0x4354534E; // "CTSN"
+    static final int FORMAT = 4;
+    static final int RECORD_FIXED_BYTES = 16 + 8 + 1 + 1 + 2 + 1 + 1 + 1;
+    private static final int MAX_OWNED_WORDS = (TagCatalogue.MAX_ID >>> 6) + 1;
+    private static final int FLAG_ENABLED = 1;
+    private static final int COLOR_RGB = 0x80;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final ChatColor[] COLORS = ChatColor.values();
+    
+    private TagSnapshot() {
+    }
+    
+    /**
+     * Reads a snapshot into memory in one go
+     * 
+     * @param file Snapshot file
+     * @return Tags by player UUID, empty if the file does not exist
+     * @throws IOException if the file is unreadable or corrupt
+     */
+    public static Map<UUID, PlayerTag> read(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) == 0) {
+            return new HashMap<>();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = readFully(channel, file);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a tag snapshot: " + file.getFileName());
+            }
+            int format = buffer.getInt();
+            if (format < 1 || format > FORMAT) {
+                throw new IOException("Unsupported snapshot format " + format + ": " + file.getFileName());
+            }
+            int count = buffer.getInt();
+            Map<UUID, PlayerTag> tags = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                readRecord(buffer, tags, format);
+            }
+            return tags;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated tag snapshot: " + file.getFileName(), e);
+        }
+    }
+    
+    /**
+     * Writes a snapshot to a temp file and atomically moves it in place
+     * 
+     * @param file Snapshot file
+     * @param tags Tags by player UUID
+     * @return Size of the written snapshot in bytes
+     * @throws IOException if the file could not be written
+     */
+    public static long write(Path file, Map<UUID, PlayerTag> tags) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(FORMAT).putInt(tags.size());
+            for (Map.Entry<UUID, PlayerTag> entry : tags.entrySet()) {
+                byte[] text = encodeText(entry.getKey(), entry.getValue());
+                byte[] animation = encodeAnimation(entry.getKey(), entry.getValue());
+                if (buffer.remaining() < recordBytes(entry.getValue(), text, animation)) {
+                    drain(channel, buffer);
+                }
+                putRecord(buffer, entry.getKey(), entry.getValue(), text, animation);
+            }
+            drain(channel, buffer);
+            channel.force(true);
+            size = channel.size();
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return size;
+    }
+    
+    /**
+     * Encodes a tag's text for {@link #putRecord}
+     */
+    static byte[] encodeText(UUID uuid, PlayerTag tag) throws IOException {
+        byte[] text = tag.getTagText().getBytes(StandardCharsets.UTF_8);
+        if (text.length > 0xFFFF) {
+            throw new IOException("Tag text too long for " + uuid);
+        }
+        return text;
+    }
+    
+    /**
+     * Encodes a tag's animation name for {@link #putRecord}
+     */
+    static byte[] encodeAnimation(UUID uuid, PlayerTag tag) throws IOException {
+        byte[] animation = tag.getAnimation().getBytes(StandardCharsets.UTF_8);
+        if (animation.length > 0xFF) {
+            throw new IOException("Animation name too long for " + uuid);
+        }
+        return animation;
+    }
+    
+    /**
+     * @return Size of a record written by {@link #putRecord}
+     */
+    static int recordBytes(PlayerTag tag, byte[] text, byte[] animation) {
+        TagColor color = tag.getTagColor();
+        return RECORD_FIXED_BYTES + (color.getNamed() != null ? 0 : 4 * color.getStopCount())
+            + text.length + animation.length + 8 * tag.getOwned().toLongArray().length + 2 * tag.getActive().length;
+    }
+    
+    /**
+     * Writes one record, the buffer needs {@link #recordBytes} bytes left
+     */
+    static void putRecord(ByteBuffer buffer, UUID uuid, PlayerTag tag, byte[] text, byte[] animation) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        buffer.putLong(tag.getVersion());
+        TagColor color = tag.getTagColor();
+        if (color.getNamed() != null) {
+            buffer.put((byte) color.getNamed().ordinal());
+        } else {
+            buffer.put((byte) (COLOR_RGB | color.getStopCount()));
+            for (int i = 0; i < color.getStopCount(); i++) {
+                buffer.putInt(color.getStop(i));
+            }
+        }
+        buffer.put((byte) (tag.isEnabled() ? FLAG_ENABLED : 0));
+        buffer.putShort((short) text.length);
+        buffer.put(text);
+        buffer.put((byte) animation.length);
+        buffer.put(animation);
+        long[] owned = tag.getOwned().toLongArray();
+        buffer.put((byte) owned.length);
+        for (long word : owned) {
+            buffer.putLong(word);
+        }
+        int[] active = tag.getActive();
+        buffer.put((byte) active.length);
+        for (int id : active) {
+            buffer.putShort((short) id);
+        }
+    }
+    
+    /**
+     * Reads one record of the given format into the given map
+     * 
+     * @throws IOException if the record is invalid
+     * @throws BufferUnderflowException if the record is cut off
+     */
+    static void readRecord(ByteBuffer buffer, Map<UUID, PlayerTag> into, int format) throws IOException {
+        UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+        long version = buffer.getLong();
+        TagColor color = readColor(buffer, uuid);
+        int flags = buffer.get() & 0xFF;
+        byte[] text = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(text);
+        byte[] animation = new byte[format >= 2 ? buffer.get() & 0xFF : 0];
+        buffer.get(animation);
+        PlayerTag tag = new PlayerTag(new String(text, StandardCharsets.UTF_8), color, (flags & FLAG_ENABLED) != 0,
+            version, new String(animation, StandardCharsets.UTF_8));
+        if (format >= 4) {
+            tag = readCatalogueTags(buffer, uuid, tag);
+        }
+        into.put(uuid, tag);
+    }
+    
+    private static PlayerTag readCatalogueTags(ByteBuffer buffer, UUID uuid, PlayerTag tag) throws IOException {
+        long[] owned = new long[buffer.get() & 0xFF];
+        if (owned.length > MAX_OWNED_WORDS) {
+            throw new IOException("Invalid owned tags for " + uuid);
+        }
+        for (int i = 0; i < owned.length; i++) {
+            owned[i] = buffer.getLong();
+        }
+        int[] active = new int[buffer.get() & 0xFF];
+        for (int i = 0; i < active.length; i++) {
+            active[i] = buffer.getShort() & 0xFFFF;
+        }
+        if (owned.length > 0) {
+            tag = tag.withOwned(OwnedTags.fromLongArray(owned));
+        }
+        if (active.length == 0) {
+            return tag;
+        }
+        try {
+            return tag.withActive(active);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid active tags for " + uuid, e);
+        }
+    }
+    
+    private static TagColor readColor(ByteBuffer buffer, UUID uuid) throws IOException {
+        int color = buffer.get() & 0xFF;
+        if ((color & COLOR_RGB) != 0) {
+            int count = color & ~COLOR_RGB;
+            if (count == 0 || count > TagColor.MAX_STOPS) {
+                throw new IOException("Invalid color stops " + count + " for " + uuid);
+            }
+            int[] stops = new int[count];
+            for (int i = 0; i < count; i++) {
+                stops[i] = buffer.getInt();
+            }
+            return TagColor.rgb(stops);
+        }
+        if (color >= COLORS.length || !COLORS[color].isColor()) {
+            throw new IOException("Invalid color " + color + " for " + uuid);
+        }
+        return TagColor.of(COLORS[color]);
+    }
+    
+    /**
+     * Reads a whole file into a heap buffer. Files are not memory-mapped,
+     * as Windows refuses to truncate or replace a file while a mapping of
+     * it is still alive, which lasts until the buffer is garbage collected.
+     * 
+     * @param channel Channel of the file, at any position
+     * @param file The file, for error messages
+     * @return Buffer holding the file, positioned at its start
+     * @throws IOException if the file could not be read or is too large
+     */
+    static ByteBuffer readFully(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("File too large: " + file.getFileName());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("File shrank while reading: " + file.getFileName());
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
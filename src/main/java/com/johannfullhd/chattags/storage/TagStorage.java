@@ -0,0 +1,60 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Persistent backend for player tags
+ */
+public interface TagStorage {
+    
+    /**
+     * Loads a single player's tag
+     * 
+     * @param uuid The player's UUID
+     * @return The stored tag, or null if the player has none
+     * @throws IOException if the backend could not be read
+     */
+    PlayerTag load(UUID uuid) throws IOException;
+    
+    /**
+     * Loads every stored tag
+     * 
+     * @return All stored tags by player UUID
+     * @throws IOException if the backend could not be read
+     */
+    Map<UUID, PlayerTag> loadAll() throws IOException;
+    
+    /**
+     * Stores a single player's tag
+     * 
+     * @param uuid The player's UUID
+     * @param tag The tag to store
+     * @throws IOException if the backend could not be written
+     */
+    void save(UUID uuid, PlayerTag tag) throws IOException;
+    
+    /**
+     * Stores a batch of tags in one operation
+     * 
+     * @param tags Tags by player UUID
+     * @throws IOException if the backend could not be written
+     */
+    void saveAll(Map<UUID, PlayerTag> tags) throws IOException;
+    
+    /**
+     * @return Total bytes written since the backend was opened, 0 if the
+     *         backend cannot tell
+     */
+    default long getBytesWritten() {
+        return 0L;
+    }
+    
+    /**
+     * Releases files and connections held by the backend
+     */
+    void close();
+}
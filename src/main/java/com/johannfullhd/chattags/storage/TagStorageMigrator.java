@@ -0,0 +1,60 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Moves tags between the legacy playerdata.yml and other backends
+ */
+public final class TagStorageMigrator {
+    
+    private TagStorageMigrator() {
+    }
+    
+    /**
+     * Copies every tag from the YAML file into the target backend and
+     * renames the file afterwards, so the migration only ever runs once
+     * 
+     * @param yamlFile The legacy playerdata.yml
+     * @param target The backend to migrate into
+     * @param logger Logger for progress messages
+     * @return Number of migrated tags, 0 if there was nothing to migrate
+     * @throws IOException if reading or writing failed; the YAML file is left untouched
+     */
+    public static int migrateFromYaml(File yamlFile, TagStorage target, Logger logger) throws IOException {
+        if (!yamlFile.isFile() || yamlFile.length() == 0) {
+            return 0;
+        }
+        
+        Map<UUID, PlayerTag> tags = new YamlTagStorage(yamlFile, logger).loadAll();
+        target.saveAll(tags);
+        
+        File migrated = new File(yamlFile.getParentFile(), yamlFile.getName() + ".migrated");
+        if (!yamlFile.renameTo(migrated)) {
+            throw new IOException("Migrated tags but could not rename " + yamlFile.getName());
+        }
+        logger.info("Migrated " + tags.size() + " player tags from " + yamlFile.getName());
+        return tags.size();
+    }
+    
+    /**
+     * Writes tags to a new YAML file in the legacy playerdata.yml layout,
+     * e.g. to inspect them or move back to the YAML backend
+     * 
+     * @param tags Tags by player UUID
+     * @param yamlFile Target file, replaced if it exists
+     * @param logger Logger for data warnings
+     * @throws IOException if the file could not be written
+     */
+    public static void exportToYaml(Map<UUID, PlayerTag> tags, File yamlFile, Logger logger) throws IOException {
+        if (yamlFile.exists() && !yamlFile.delete()) {
+            throw new IOException("Could not replace " + yamlFile.getName());
+        }
+        new YamlTagStorage(yamlFile, logger).saveAll(tags);
+    }
+}
@@ -0,0 +1,187 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+/**
+ * Collects changed player tags and writes them on a background thread.
+ * <p>
+ * Only the latest snapshot per player is kept, so a burst of changes is
+ * merged into a single write once the flush delay has passed. The delay
+ * is asked for on every flush, so it can grow while the server is busy
+ * and merge more changes into each write.
+ */
+public class WriteBehindQueue {
+
+    /**
+     * Receives a batch of changed tags on the saver thread
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(Map<UUID, PlayerTag> batch) throws IOException;
+    }
+
+    private final Logger logger;
+    private final BatchWriter writer;
+    private final LongSupplier flushDelayMillis;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<UUID, PlayerTag> pending = new ConcurrentHashMap<>();
+    private volatile Map<UUID, PlayerTag> inFlight = Collections.emptyMap();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object writeLock = new Object();
+
+    public WriteBehindQueue(Logger logger, BatchWriter writer, long flushDelayMillis) {
+        this(logger, writer, () -> flushDelayMillis);
+    }
+
+    /**
+     * @param logger Logger for failed writes
+     * @param writer Writes a batch on the saver thread
+     * @param flushDelayMillis Delay from the first queued change to the
+     *                         write, asked for before every flush
+     */
+    public WriteBehindQueue(Logger logger, BatchWriter writer, LongSupplier flushDelayMillis) {
+        this.logger = logger;
+        this.writer = writer;
+        this.flushDelayMillis = flushDelayMillis;
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "ChatTags-Saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queues a snapshot of a player's tag for writing
+     *
+     * @param uuid The player's UUID
+     * @param snapshot The tag state to persist
+     */
+    public void enqueue(UUID uuid, PlayerTag snapshot) {
+        pending.put(uuid, snapshot);
+        scheduleFlush();
+    }
+
+    /**
+     * Queues a batch of snapshots with a single flush, e.g. from a bulk job
+     *
+     * @param snapshots Tag states to persist by player UUID
+     */
+    public void enqueueAll(Map<UUID, PlayerTag> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        pending.putAll(snapshots);
+        scheduleFlush();
+    }
+
+    /**
+     * Starts flushing pending changes at a fixed interval, which also
+     * retries batches whose previous write failed
+     *
+     * @param intervalMinutes Interval in minutes, 0 or less disables it
+     */
+    public void startAutoSave(long intervalMinutes) {
+        if (intervalMinutes <= 0) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::flush, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Gets the newest snapshot that has not reached storage yet, so reads
+     * made while a write is in progress still see the latest state
+     *
+     * @param uuid The player's UUID
+     * @return The unsaved snapshot, or null if storage is up to date
+     */
+    public PlayerTag getPending(UUID uuid) {
+        PlayerTag tag = pending.get(uuid);
+        return tag != null ? tag : inFlight.get(uuid);
+    }
+
+    /**
+     * @return Copy of all snapshots that have not reached storage yet
+     */
+    public Map<UUID, PlayerTag> getPendingSnapshot() {
+        Map<UUID, PlayerTag> snapshot = new HashMap<>(inFlight);
+        snapshot.putAll(pending);
+        return snapshot;
+    }
+
+    /**
+     * @return Number of players with unsaved changes
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void scheduleFlush() {
+        if (!executor.isShutdown() && flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::runScheduledFlush, Math.max(0L, flushDelayMillis.getAsLong()),
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runScheduledFlush() {
+        flushScheduled.set(false);
+        flush();
+    }
+
+    /**
+     * Writes all pending changes on the calling thread
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<UUID, PlayerTag> batch = new HashMap<>(pending);
+            // Publish the batch before removing it so readers never miss it
+            inFlight = batch;
+            for (Map.Entry<UUID, PlayerTag> entry : batch.entrySet()) {
+                // Keeps the entry if a newer snapshot arrived meanwhile
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+            try {
+                writer.write(batch);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not save " + batch.size() + " player tags, will retry", e);
+                for (Map.Entry<UUID, PlayerTag> entry : batch.entrySet()) {
+                    pending.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                inFlight = Collections.emptyMap();
+            }
+        }
+    }
+
+    /**
+     * Stops the saver thread and writes everything still pending,
+     * blocking until done
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Saver thread did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
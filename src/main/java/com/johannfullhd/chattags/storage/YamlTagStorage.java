@@ -0,0 +1,168 @@
+package com.johannfullhd.chattags.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagColor;
+
+/**
+ * Stores all tags in a single YAML file. Every write re-serializes the
+ * whole file, so this backend suits small servers best. The file is only
+ * parsed on first access, keeping it off the plugin enable path.
+ * <p>
+ * YAML cannot be read or written in parts, so once parsed the whole tree
+ * of every stored player stays in memory until the plugin is disabled,
+ * even when only online players are cached. Servers with many thousands
+ * of stored players should use the h2 or binary backend instead.
+ */
+public class YamlTagStorage implements TagStorage {
+    
+    private static final int LARGE_FILE_PLAYERS = 10_000;
+    
+    private final File dataFile;
+    private final Logger logger;
+    private FileConfiguration dataConfig;
+    private long bytesWritten;
+    
+    public YamlTagStorage(File dataFile, Logger logger) throws IOException {
+        this.dataFile = dataFile;
+        this.logger = logger;
+        if (!dataFile.exists()) {
+            File parent = dataFile.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            dataFile.createNewFile();
+        }
+    }
+    
+    private FileConfiguration config() {
+        if (dataConfig == null) {
+            dataConfig = YamlConfiguration.loadConfiguration(dataFile);
+            ConfigurationSection players = dataConfig.getConfigurationSection("players");
+            int count = players == null ? 0 : players.getKeys(false).size();
+            if (count > LARGE_FILE_PLAYERS) {
+                logger.warning(dataFile.getName() + " holds " + count + " players and is kept in memory as a whole;"
+                    + " consider storage.type h2 or binary");
+            }
+        }
+        return dataConfig;
+    }
+    
+    @Override
+    public synchronized PlayerTag load(UUID uuid) {
+        ConfigurationSection section = config().getConfigurationSection("players." + uuid);
+        return section == null ? null : readTag(uuid.toString(), section);
+    }
+    
+    @Override
+    public synchronized Map<UUID, PlayerTag> loadAll() {
+        ConfigurationSection players = config().getConfigurationSection("players");
+        if (players == null) {
+            return new HashMap<>();
+        }
+        
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        for (String uuidString : players.getKeys(false)) {
+            try {
+                UUID uuid = UUID.fromString(uuidString);
+                ConfigurationSection section = players.getConfigurationSection(uuidString);
+                PlayerTag tag = section == null ? null : readTag(uuidString, section);
+                if (tag != null) {
+                    tags.put(uuid, tag);
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warning("Invalid data for player " + uuidString);
+            }
+        }
+        return tags;
+    }
+    
+    private PlayerTag readTag(String uuidString, ConfigurationSection section) {
+        try {
+            String tagText = section.getString("text", "");
+            TagColor color = TagColor.decode(section.getString("color", "GRAY"));
+            boolean enabled = section.getBoolean("enabled", false);
+            long version = section.getLong("version", 0L);
+            String animation = section.getString("animation", "");
+            return new PlayerTag(tagText, color, enabled, version, animation)
+                .withOwned(OwnedTags.of(section.getIntegerList("owned").stream().mapToInt(Integer::intValue).toArray()))
+                .withActive(section.getIntegerList("active").stream().mapToInt(Integer::intValue).toArray());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid data for player " + uuidString);
+            return null;
+        }
+    }
+    
+    @Override
+    public void save(UUID uuid, PlayerTag tag) throws IOException {
+        saveAll(Collections.singletonMap(uuid, tag));
+    }
+    
+    @Override
+    public synchronized void saveAll(Map<UUID, PlayerTag> tags) throws IOException {
+        FileConfiguration dataConfig = config();
+        for (Map.Entry<UUID, PlayerTag> entry : tags.entrySet()) {
+            UUID uuid = entry.getKey();
+            PlayerTag tag = entry.getValue();
+            
+            dataConfig.set("players." + uuid + ".text", tag.getTagText());
+            dataConfig.set("players." + uuid + ".color", tag.getTagColor().encode());
+            dataConfig.set("players." + uuid + ".enabled", tag.isEnabled());
+            dataConfig.set("players." + uuid + ".version", tag.getVersion());
+            // Left out for static tags to keep the file as it was
+            dataConfig.set("players." + uuid + ".animation", tag.getAnimation().isEmpty() ? null : tag.getAnimation());
+            dataConfig.set("players." + uuid + ".owned", tag.getOwned().isEmpty() ? null : toList(tag.getOwned().ids()));
+            int[] active = tag.getActive();
+            dataConfig.set("players." + uuid + ".active", active.length == 0 ? null : toList(active));
+        }
+        
+        // Write to a temp file first so a crash never leaves a truncated file behind
+        Path target = dataFile.toPath();
+        Path temp = target.resolveSibling(dataFile.getName() + ".tmp");
+        byte[] data = dataConfig.saveToString().getBytes(StandardCharsets.UTF_8);
+        Files.write(temp, data);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        bytesWritten += data.length;
+    }
+    
+    private static List<Integer> toList(int[] ids) {
+        List<Integer> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+    
+    @Override
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    @Override
+    public void close() {
+        // Nothing held open between writes
+    }
+}
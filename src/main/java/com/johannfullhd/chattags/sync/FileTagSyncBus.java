@@ -0,0 +1,178 @@
+package com.johannfullhd.chattags.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exchanges changes through a directory shared by all servers, e.g. on
+ * the same host or a network mount.
+ * <p>
+ * Every poll, queued changes are written as one batch file named after
+ * this node, and batch files of other nodes that were not seen yet are
+ * read. Each node deletes its own files after the retention time.
+ * Re-reading a batch is harmless since older versions never win.
+ */
+public class FileTagSyncBus implements TagSyncBus {
+    
+    private static final int MAGIC = 0x43545344; // "CTSD"
+    private static final int FORMAT = 4;
+    private static final String SUFFIX = ".delta";
+    
+    private final File directory;
+    private final String nodeId;
+    private final long pollMillis;
+    private final long retentionMillis;
+    private final Logger logger;
+    private final Queue<TagDelta> outbox = new ConcurrentLinkedQueue<>();
+    private final Set<String> seen = new HashSet<>();
+    private final ScheduledExecutorService executor;
+    private Consumer<TagDelta> listener;
+    private long sequence;
+    
+    /**
+     * @param directory Shared directory
+     * @param nodeId Id of this server, unique in the network
+     * @param pollMillis Interval between writing and reading batches
+     * @param retentionMillis How long own batch files are kept
+     * @param logger Logger for transport errors
+     */
+    public FileTagSyncBus(File directory, String nodeId, long pollMillis, long retentionMillis, Logger logger) {
+        this.directory = directory;
+        this.nodeId = nodeId;
+        this.pollMillis = Math.max(10L, pollMillis);
+        this.retentionMillis = Math.max(this.pollMillis * 10, retentionMillis);
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ChatTags-Sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @Override
+    public void start(Consumer<TagDelta> listener) {
+        this.listener = listener;
+        directory.mkdirs();
+        executor.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public void publish(TagDelta delta) {
+        outbox.add(delta);
+    }
+    
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeOutbox();
+    }
+    
+    private void poll() {
+        try {
+            writeOutbox();
+            readInbox();
+            deleteExpired();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Tag sync poll failed", e);
+        }
+    }
+    
+    private synchronized void writeOutbox() {
+        List<TagDelta> batch = new ArrayList<>();
+        for (TagDelta delta; (delta = outbox.poll()) != null; ) {
+            batch.add(delta);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        String name = nodeId + "." + System.currentTimeMillis() + "." + (sequence++) + SUFFIX;
+        Path target = new File(directory, name).toPath();
+        Path temp = new File(directory, name + ".tmp").toPath();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT);
+                out.writeUTF(nodeId);
+                out.writeInt(batch.size());
+                for (TagDelta delta : batch) {
+                    delta.writeTo(out);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not publish " + batch.size() + " tag changes", e);
+        }
+    }
+    
+    private void readInbox() {
+        String[] names = directory.list((dir, name) -> name.endsWith(SUFFIX) && !name.startsWith(nodeId + "."));
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        // Forget files that are gone so the set stays small
+        seen.retainAll(Arrays.asList(names));
+        for (String name : names) {
+            if (!seen.add(name)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(new File(directory, name).toPath())))) {
+                int format = in.readInt() == MAGIC ? in.readUnsignedByte() : -1;
+                if (format < 1 || format > FORMAT) {
+                    logger.warning("Ignoring unknown sync file " + name);
+                    continue;
+                }
+                String origin = in.readUTF();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    listener.accept(TagDelta.readFrom(in, origin, format));
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read sync file " + name, e);
+            }
+        }
+    }
+    
+    private void deleteExpired() {
+        File[] own = directory.listFiles((dir, name) -> name.startsWith(nodeId + ".") && name.endsWith(SUFFIX));
+        if (own == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (File file : own) {
+            if (file.lastModified() < cutoff) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.johannfullhd.chattags.sync;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.bukkit.ChatColor;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagCatalogue;
+import com.johannfullhd.chattags.models.TagColor;
+
+/**
+ * A single tag change sent between servers
+ */
+public final class TagDelta {
+    
+    private static final ChatColor[] COLORS = ChatColor.values();
+    private static final int FLAG_ENABLED = 1;
+    private static final int COLOR_RGB = 0x80;
+    
+    private final String origin;
+    private final UUID uuid;
+    private final PlayerTag tag;
+    
+    public TagDelta(String origin, UUID uuid, PlayerTag tag) {
+        this.origin = origin;
+        this.uuid = uuid;
+        this.tag = tag;
+    }
+    
+    /**
+     * @return Node id of the server the change was made on
+     */
+    public String getOrigin() {
+        return origin;
+    }
+    
+    public UUID getUuid() {
+        return uuid;
+    }
+    
+    public PlayerTag getTag() {
+        return tag;
+    }
+    
+    /**
+     * Checks whether this change wins over a local tag. Higher versions
+     * win; on equal versions the higher node id wins so every server
+     * settles on the same state.
+     * 
+     * @param current The local tag
+     * @param localNode Node id of this server
+     * @return true if this change should replace the local tag
+     */
+    public boolean isNewerThan(PlayerTag current, String localNode) {
+        long version = tag.getVersion();
+        return version > current.getVersion()
+            || (version == current.getVersion() && origin.compareTo(localNode) > 0);
+    }
+    
+    /**
+     * Writes the change without its origin, which is written once per batch
+     * 
+     * @param out Target
+     * @throws IOException if writing failed
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+        out.writeLong(tag.getVersion());
+        TagColor color = tag.getTagColor();
+        if (color.getNamed() != null) {
+            out.writeByte(color.getNamed().ordinal());
+        } else {
+            out.writeByte(COLOR_RGB | color.getStopCount());
+            for (int i = 0; i < color.getStopCount(); i++) {
+                out.writeInt(color.getStop(i));
+            }
+        }
+        out.writeByte(tag.isEnabled() ? FLAG_ENABLED : 0);
+        out.writeUTF(tag.getTagText());
+        out.writeUTF(tag.getAnimation());
+        long[] owned = tag.getOwned().toLongArray();
+        out.writeByte(owned.length);
+        for (long word : owned) {
+            out.writeLong(word);
+        }
+        int[] active = tag.getActive();
+        out.writeByte(active.length);
+        for (int id : active) {
+            out.writeShort(id);
+        }
+    }
+    
+    /**
+     * Reads a change written by {@link #writeTo(DataOutput)}
+     * 
+     * @param in Source
+     * @param origin Node id of the batch
+     * @param format Format of the batch, format 1 has no animation and
+     *               formats before 4 no catalogue tags
+     * @return The change
+     * @throws IOException if reading failed or the data is invalid
+     */
+    static TagDelta readFrom(DataInput in, String origin, int format) throws IOException {
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+        long version = in.readLong();
+        TagColor color = readColor(in, uuid);
+        int flags = in.readUnsignedByte();
+        String text = in.readUTF();
+        String animation = format >= 2 ? in.readUTF() : "";
+        PlayerTag tag = new PlayerTag(text, color, (flags & FLAG_ENABLED) != 0, version, animation);
+        if (format >= 4) {
+            tag = readCatalogueTags(in, uuid, tag);
+        }
+        return new TagDelta(origin, uuid, tag);
+    }
+    
+    private static PlayerTag readCatalogueTags(DataInput in, UUID uuid, PlayerTag tag) throws IOException {
+        long[] owned = new long[in.readUnsignedByte()];
+        if (owned.length > (TagCatalogue.MAX_ID >>> 6) + 1) {
+            throw new IOException("Invalid owned tags for " + uuid);
+        }
+        for (int i = 0; i < owned.length; i++) {
+            owned[i] = in.readLong();
+        }
+        int[] active = new int[in.readUnsignedByte()];
+        for (int i = 0; i < active.length; i++) {
+            active[i] = in.readUnsignedShort();
+        }
+        try {
+            return tag.withOwned(OwnedTags.fromLongArray(owned)).withActive(active);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid active tags for " + uuid, e);
+        }
+    }
+    
+    private static TagColor readColor(DataInput in, UUID uuid) throws IOException {
+        int color = in.readUnsignedByte();
+        if ((color & COLOR_RGB) != 0) {
+            int count = color & ~COLOR_RGB;
+            if (count == 0 || count > TagColor.MAX_STOPS) {
+                throw new IOException("Invalid color stops " + count + " for " + uuid);
+            }
+            int[] stops = new int[count];
+            for (int i = 0; i < count; i++) {
+                stops[i] = in.readInt();
+            }
+            return TagColor.rgb(stops);
+        }
+        if (color >= COLORS.length || !COLORS[color].isColor()) {
+            throw new IOException("Invalid color " + color + " for " + uuid);
+        }
+        return TagColor.of(COLORS[color]);
+    }
+}
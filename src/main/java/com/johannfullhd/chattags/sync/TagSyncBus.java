@@ -0,0 +1,28 @@
+package com.johannfullhd.chattags.sync;
+
+import java.util.function.Consumer;
+
+/**
+ * Transport that carries tag changes between servers
+ */
+public interface TagSyncBus {
+    
+    /**
+     * Starts receiving changes from other servers
+     * 
+     * @param listener Called for every received change, on a bus thread
+     */
+    void start(Consumer<TagDelta> listener);
+    
+    /**
+     * Sends a change to all other servers. Must not block.
+     * 
+     * @param delta The change
+     */
+    void publish(TagDelta delta);
+    
+    /**
+     * Sends anything still queued and stops the bus
+     */
+    void close();
+}
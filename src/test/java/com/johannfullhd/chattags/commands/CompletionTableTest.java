@@ -0,0 +1,39 @@
+package com.johannfullhd.chattags.commands;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CompletionTableTest {
+    
+    private final CompletionTable table = new CompletionTable("gold", "admin", "green", "vip", "goldplus");
+    
+    @Test
+    void completesEntriesWithPrefixInSortedOrder() {
+        assertEquals(List.of("gold", "goldplus", "green"), table.complete("g"));
+        assertEquals(List.of("gold", "goldplus"), table.complete("gold"));
+        assertEquals(List.of("admin", "gold", "goldplus", "green", "vip"), table.complete(""));
+    }
+    
+    @Test
+    void returnsEmptyListWithoutMatches() {
+        assertTrue(table.complete("x").isEmpty());
+        assertTrue(table.complete("zzz").isEmpty());
+        assertTrue(new CompletionTable().complete("").isEmpty());
+    }
+    
+    @Test
+    void resultIsModifiable() {
+        List<String> keys = table.complete("x");
+        keys.add(0, "custom");
+        assertEquals(List.of("custom"), keys);
+        
+        keys = table.complete("g");
+        keys.removeIf(key -> key.startsWith("gold"));
+        assertEquals(List.of("green"), keys);
+        assertEquals(List.of("gold", "goldplus", "green"), table.complete("g"));
+    }
+}
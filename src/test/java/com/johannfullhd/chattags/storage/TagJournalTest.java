@@ -0,0 +1,164 @@
+package com.johannfullhd.chattags.storage;
+
+import static com.johannfullhd.chattags.storage.TagSnapshotTest.ALICE;
+import static com.johannfullhd.chattags.storage.TagSnapshotTest.BOB;
+import static com.johannfullhd.chattags.storage.TagSnapshotTest.assertTag;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.bukkit.ChatColor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagColor;
+
+class TagJournalTest {
+    
+    private static final int MAGIC = 0x43544A4E;
+    private static final Logger LOGGER = Logger.getLogger(TagJournalTest.class.getName());
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void replaysBatchesInWriteOrder() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        PlayerTag first = new PlayerTag("One", ChatColor.RED, true, 1L);
+        PlayerTag second = new PlayerTag("Two", TagColor.rgb(0x123456, 0x654321), false, 2L, "pulse")
+            .withOwned(OwnedTags.of(3, 200))
+            .withActive(200);
+        PlayerTag other = new PlayerTag("Bob", ChatColor.BLUE, true, 1L);
+        try (TagJournal journal = TagJournal.open(file, 0)) {
+            Map<UUID, PlayerTag> batch = new LinkedHashMap<>();
+            batch.put(ALICE, first);
+            batch.put(BOB, other);
+            long written = journal.append(batch);
+            journal.append(Map.of(ALICE, second));
+            
+            assertEquals(3, journal.getRecords());
+            assertTrue(written > 0);
+        }
+        
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        assertEquals(3, TagJournal.replay(file, tags, LOGGER));
+        
+        assertEquals(2, tags.size());
+        assertTag(second, tags.get(ALICE));
+        assertTag(other, tags.get(BOB));
+    }
+    
+    @Test
+    void reopenedJournalAppendsAfterExistingRecords() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        try (TagJournal journal = TagJournal.open(file, 0)) {
+            journal.append(Map.of(ALICE, new PlayerTag("Old", ChatColor.RED, true, 1L)));
+        }
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        long records = TagJournal.replay(file, tags, LOGGER);
+        try (TagJournal journal = TagJournal.open(file, records)) {
+            journal.append(Map.of(BOB, new PlayerTag("New", ChatColor.BLUE, true, 1L)));
+            assertEquals(2, journal.getRecords());
+        }
+        
+        tags.clear();
+        assertEquals(2, TagJournal.replay(file, tags, LOGGER));
+        assertEquals("Old", tags.get(ALICE).getTagText());
+        assertEquals("New", tags.get(BOB).getTagText());
+    }
+    
+    @Test
+    void dropsTornTailAndTruncatesIt() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        try (TagJournal journal = TagJournal.open(file, 0)) {
+            journal.append(Map.of(ALICE, new PlayerTag("Kept", ChatColor.RED, true, 1L)));
+        }
+        long intact = Files.size(file);
+        try (TagJournal journal = TagJournal.open(file, 1)) {
+            journal.append(Map.of(BOB, new PlayerTag("Torn", ChatColor.BLUE, true, 1L)));
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+        
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        assertEquals(1, TagJournal.replay(file, tags, LOGGER));
+        
+        assertEquals("Kept", tags.get(ALICE).getTagText());
+        assertFalse(tags.containsKey(BOB));
+        assertEquals(intact, Files.size(file));
+    }
+    
+    @Test
+    void stopsAtRecordWithBadChecksum() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        try (TagJournal journal = TagJournal.open(file, 0)) {
+            journal.append(Map.of(ALICE, new PlayerTag("Good", ChatColor.RED, true, 1L)));
+        }
+        long intact = Files.size(file);
+        try (TagJournal journal = TagJournal.open(file, 1)) {
+            journal.append(Map.of(BOB, new PlayerTag("Flip", ChatColor.BLUE, true, 1L)));
+        }
+        byte[] data = Files.readAllBytes(file);
+        // Flip a bit in the second record's text
+        data[data.length - 12] ^= 1;
+        Files.write(file, data);
+        
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        assertEquals(1, TagJournal.replay(file, tags, LOGGER));
+        
+        assertFalse(tags.containsKey(BOB));
+        assertEquals(intact, Files.size(file));
+    }
+    
+    @Test
+    void replaysOlderFormatButDoesNotAppendToIt() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        ByteBuffer buffer = ByteBuffer.allocate(256).putInt(MAGIC).putInt(1);
+        int start = buffer.position();
+        TagSnapshotTest.putRecordStart(buffer, ALICE, 9L, ChatColor.GOLD.ordinal(), true, "Legacy");
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().flip().position(start));
+        buffer.putInt((int) crc.getValue());
+        Files.write(file, TagSnapshotTest.bytes(buffer));
+        
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        assertEquals(1, TagJournal.replay(file, tags, LOGGER));
+        
+        assertTag(new PlayerTag("Legacy", ChatColor.GOLD, true, 9L), tags.get(ALICE));
+        assertFalse(TagJournal.isCurrentFormat(file));
+    }
+    
+    @Test
+    void newJournalIsCurrentFormat() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        assertTrue(TagJournal.isCurrentFormat(file));
+        TagJournal.open(file, 0).close();
+        assertTrue(TagJournal.isCurrentFormat(file));
+        assertEquals(0, TagJournal.replay(file, new HashMap<>(), LOGGER));
+    }
+    
+    @Test
+    void rejectsForeignFiles() throws IOException {
+        Path file = directory.resolve("playerdata.bin.journal");
+        TagSnapshot.write(file, Map.of(ALICE, new PlayerTag("Snap", ChatColor.RED, true, 1L)));
+        
+        assertThrows(IOException.class, () -> TagJournal.replay(file, new HashMap<>(), LOGGER));
+    }
+}
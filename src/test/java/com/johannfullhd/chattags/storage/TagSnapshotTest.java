@@ -0,0 +1,198 @@
+package com.johannfullhd.chattags.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.ChatColor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagColor;
+
+class TagSnapshotTest {
+    
+    static final int MAGIC = 0x4354534E;
+    static final UUID ALICE = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+    static final UUID BOB = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void roundTripsAllFields() throws IOException {
+        Path file = directory.resolve("playerdata.bin");
+        Map<UUID, PlayerTag> tags = new HashMap<>();
+        tags.put(ALICE, new PlayerTag("&cVIP \u00e9", TagColor.rgb(0xFF0000, 0x00FF00, 0x0000FF), true, 12L, "rainbow")
+            .withOwned(OwnedTags.of(1, 64, 511))
+            .withActive(511, 1));
+        tags.put(BOB, new PlayerTag("Pro", ChatColor.GOLD, false, 3L));
+        
+        long size = TagSnapshot.write(file, tags);
+        Map<UUID, PlayerTag> read = TagSnapshot.read(file);
+        
+        assertEquals(Files.size(file), size);
+        assertFalse(Files.exists(directory.resolve("playerdata.bin.tmp")));
+        assertEquals(tags.keySet(), read.keySet());
+        assertTag(tags.get(ALICE), read.get(ALICE));
+        assertTag(tags.get(BOB), read.get(BOB));
+    }
+    
+    @Test
+    void writeReplacesExistingSnapshot() throws IOException {
+        Path file = directory.resolve("playerdata.bin");
+        TagSnapshot.write(file, Map.of(ALICE, new PlayerTag("Old", ChatColor.RED, true, 1L)));
+        TagSnapshot.write(file, Map.of(BOB, new PlayerTag("New", ChatColor.BLUE, true, 2L)));
+        
+        Map<UUID, PlayerTag> read = TagSnapshot.read(file);
+        
+        assertEquals(1, read.size());
+        assertEquals("New", read.get(BOB).getTagText());
+    }
+    
+    @Test
+    void readsMissingOrEmptyFileAsEmpty() throws IOException {
+        Path file = directory.resolve("playerdata.bin");
+        assertTrue(TagSnapshot.read(file).isEmpty());
+        Files.createFile(file);
+        assertTrue(TagSnapshot.read(file).isEmpty());
+    }
+    
+    @Test
+    void readsFormat1() throws IOException {
+        ByteBuffer buffer = header(1, 1);
+        putRecordStart(buffer, ALICE, 4L, ChatColor.GREEN.ordinal(), true, "One");
+        
+        PlayerTag tag = readSingle(buffer);
+        
+        assertTag(new PlayerTag("One", ChatColor.GREEN, true, 4L), tag);
+    }
+    
+    @Test
+    void readsFormat2WithAnimation() throws IOException {
+        ByteBuffer buffer = header(2, 1);
+        putRecordStart(buffer, ALICE, 5L, ChatColor.AQUA.ordinal(), false, "Two");
+        putAnimation(buffer, "pulse");
+        
+        PlayerTag tag = readSingle(buffer);
+        
+        assertTag(new PlayerTag("Two", TagColor.of(ChatColor.AQUA), false, 5L, "pulse"), tag);
+    }
+    
+    @Test
+    void readsFormat3WithRgbColor() throws IOException {
+        ByteBuffer buffer = header(3, 1);
+        putUuid(buffer, ALICE);
+        buffer.putLong(6L);
+        buffer.put((byte) (0x80 | 2)).putInt(0x112233).putInt(0x445566);
+        putFlagsAndText(buffer, true, "Three");
+        putAnimation(buffer, "");
+        
+        PlayerTag tag = readSingle(buffer);
+        
+        assertTag(new PlayerTag("Three", TagColor.rgb(0x112233, 0x445566), true, 6L, ""), tag);
+    }
+    
+    @Test
+    void rejectsForeignFiles() throws IOException {
+        Path file = directory.resolve("playerdata.bin");
+        Files.write(file, "players:\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> TagSnapshot.read(file));
+        
+        ByteBuffer buffer = header(TagSnapshot.FORMAT + 1, 0);
+        Files.write(file, bytes(buffer));
+        assertThrows(IOException.class, () -> TagSnapshot.read(file));
+    }
+    
+    @Test
+    void rejectsInvalidRecords() throws IOException {
+        Path file = directory.resolve("playerdata.bin");
+        ByteBuffer buffer = header(1, 1);
+        putRecordStart(buffer, ALICE, 1L, ChatColor.BOLD.ordinal(), true, "Bold");
+        Files.write(file, bytes(buffer));
+        assertThrows(IOException.class, () -> TagSnapshot.read(file));
+        
+        buffer = header(3, 1);
+        putUuid(buffer, ALICE);
+        buffer.putLong(1L);
+        buffer.put((byte) 0x80);
+        Files.write(file, bytes(buffer));
+        assertThrows(IOException.class, () -> TagSnapshot.read(file));
+    }
+    
+    @Test
+    void rejectsTruncatedSnapshot() throws IOException {
+        Path file = directory.resolve("playerdata.bin");
+        TagSnapshot.write(file, Map.of(ALICE, new PlayerTag("Cut", ChatColor.RED, true, 1L)));
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 2));
+        
+        assertThrows(IOException.class, () -> TagSnapshot.read(file));
+    }
+    
+    private PlayerTag readSingle(ByteBuffer buffer) throws IOException {
+        Path file = directory.resolve("old.bin");
+        Files.write(file, bytes(buffer));
+        Map<UUID, PlayerTag> read = TagSnapshot.read(file);
+        assertEquals(1, read.size());
+        return read.get(ALICE);
+    }
+    
+    private static ByteBuffer header(int format, int count) {
+        return ByteBuffer.allocate(1024).putInt(MAGIC).putInt(format).putInt(count);
+    }
+    
+    /**
+     * Writes the fields every format starts a record with, for a named color
+     */
+    static void putRecordStart(ByteBuffer buffer, UUID uuid, long version, int color, boolean enabled, String text) {
+        putUuid(buffer, uuid);
+        buffer.putLong(version);
+        buffer.put((byte) color);
+        putFlagsAndText(buffer, enabled, text);
+    }
+    
+    static void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+    
+    static void putFlagsAndText(ByteBuffer buffer, boolean enabled, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.put((byte) (enabled ? 1 : 0)).putShort((short) bytes.length).put(bytes);
+    }
+    
+    static void putAnimation(ByteBuffer buffer, String animation) {
+        byte[] bytes = animation.getBytes(StandardCharsets.UTF_8);
+        buffer.put((byte) bytes.length).put(bytes);
+    }
+    
+    static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.duplicate().flip().get(bytes);
+        return bytes;
+    }
+    
+    static void assertTag(PlayerTag expected, PlayerTag actual) {
+        assertEquals(expected.getTagText(), actual.getTagText());
+        assertEquals(expected.getTagColor(), actual.getTagColor());
+        assertEquals(expected.isEnabled(), actual.isEnabled());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getAnimation(), actual.getAnimation());
+        assertEquals(expected.getOwned(), actual.getOwned());
+        assertArrayEquals(expected.getActive(), actual.getActive());
+    }
+}
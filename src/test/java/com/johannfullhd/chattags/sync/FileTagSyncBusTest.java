@@ -0,0 +1,92 @@
+package com.johannfullhd.chattags.sync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bukkit.ChatColor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.johannfullhd.chattags.models.PlayerTag;
+
+class FileTagSyncBusTest {
+    
+    private static final Logger LOGGER = Logger.getLogger(FileTagSyncBusTest.class.getName());
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void exchangesBatchesBetweenNodes() throws InterruptedException {
+        File shared = directory.toFile();
+        FileTagSyncBus first = new FileTagSyncBus(shared, "node-a", 10L, 60_000L, LOGGER);
+        FileTagSyncBus second = new FileTagSyncBus(shared, "node-b", 10L, 60_000L, LOGGER);
+        BlockingQueue<TagDelta> firstReceived = new LinkedBlockingQueue<>();
+        BlockingQueue<TagDelta> secondReceived = new LinkedBlockingQueue<>();
+        first.start(firstReceived::add);
+        second.start(secondReceived::add);
+        try {
+            UUID alice = UUID.randomUUID();
+            UUID bob = UUID.randomUUID();
+            PlayerTag aliceTag = new PlayerTag("VIP", ChatColor.RED, true, 3L);
+            PlayerTag bobTag = new PlayerTag("Pro", ChatColor.BLUE, false, 4L);
+            first.publish(new TagDelta("node-a", alice, aliceTag));
+            first.publish(new TagDelta("node-a", bob, bobTag));
+            
+            TagDelta received = secondReceived.poll(5, TimeUnit.SECONDS);
+            assertNotNull(received, "node-b received nothing");
+            assertEquals("node-a", received.getOrigin());
+            assertEquals(alice, received.getUuid());
+            TagDeltaTest.assertTag(aliceTag, received.getTag());
+            received = secondReceived.poll(5, TimeUnit.SECONDS);
+            assertNotNull(received, "second change of the batch missing");
+            assertEquals(bob, received.getUuid());
+            TagDeltaTest.assertTag(bobTag, received.getTag());
+            
+            PlayerTag reply = aliceTag.withTagText("MVP").withVersion(5L);
+            second.publish(new TagDelta("node-b", alice, reply));
+            received = firstReceived.poll(5, TimeUnit.SECONDS);
+            assertNotNull(received, "node-a received nothing");
+            assertEquals("node-b", received.getOrigin());
+            TagDeltaTest.assertTag(reply, received.getTag());
+            
+            // Neither node reads its own batches or reads a batch twice
+            Thread.sleep(100L);
+            assertNull(firstReceived.poll());
+            assertNull(secondReceived.poll());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+    
+    @Test
+    void closeWritesQueuedChanges() throws InterruptedException {
+        File shared = directory.toFile();
+        FileTagSyncBus first = new FileTagSyncBus(shared, "node-a", 60_000L, 600_000L, LOGGER);
+        FileTagSyncBus second = new FileTagSyncBus(shared, "node-b", 10L, 60_000L, LOGGER);
+        BlockingQueue<TagDelta> received = new LinkedBlockingQueue<>();
+        first.start(delta -> { });
+        second.start(received::add);
+        try {
+            UUID player = UUID.randomUUID();
+            first.publish(new TagDelta("node-a", player, new PlayerTag("Bye", ChatColor.GREEN, true, 1L)));
+            first.close();
+            
+            TagDelta delta = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(delta, "change queued before close was lost");
+            assertEquals(player, delta.getUuid());
+        } finally {
+            second.close();
+        }
+    }
+}
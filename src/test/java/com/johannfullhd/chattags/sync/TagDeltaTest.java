@@ -0,0 +1,152 @@
+package com.johannfullhd.chattags.sync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.bukkit.ChatColor;
+import org.junit.jupiter.api.Test;
+
+import com.johannfullhd.chattags.models.OwnedTags;
+import com.johannfullhd.chattags.models.PlayerTag;
+import com.johannfullhd.chattags.models.TagColor;
+
+class TagDeltaTest {
+    
+    private static final UUID PLAYER = UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7");
+    
+    @Test
+    void roundTripsCurrentFormat() throws IOException {
+        PlayerTag tag = new PlayerTag("&cVIP", TagColor.rgb(0xFF0000, 0x0000FF), true, 42L, "rainbow")
+            .withOwned(OwnedTags.of(1, 70, 300))
+            .withActive(70, 1);
+        
+        TagDelta read = roundTrip(new TagDelta("lobby", PLAYER, tag), 4);
+        
+        assertEquals("lobby", read.getOrigin());
+        assertEquals(PLAYER, read.getUuid());
+        assertTag(tag, read.getTag());
+    }
+    
+    @Test
+    void roundTripsNamedColorWithoutCatalogueTags() throws IOException {
+        PlayerTag tag = new PlayerTag("Pro", ChatColor.GOLD, false, 7L);
+        
+        assertTag(tag, roundTrip(new TagDelta("lobby", PLAYER, tag), 4).getTag());
+    }
+    
+    @Test
+    void readsFormat1WithoutAnimation() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, 5L, ChatColor.RED.ordinal(), true, "Old");
+        
+        PlayerTag tag = read(bytes, 1).getTag();
+        
+        assertTag(new PlayerTag("Old", ChatColor.RED, true, 5L), tag);
+    }
+    
+    @Test
+    void readsFormat2WithAnimation() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, 6L, ChatColor.AQUA.ordinal(), false, "Anim");
+        out.writeUTF("pulse");
+        
+        PlayerTag tag = read(bytes, 2).getTag();
+        
+        assertTag(new PlayerTag("Anim", TagColor.of(ChatColor.AQUA), false, 6L, "pulse"), tag);
+    }
+    
+    @Test
+    void readsFormat3WithRgbColor() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, 8L, 0x80 | 2, true, null);
+        out.writeInt(0x112233);
+        out.writeInt(0x445566);
+        out.writeByte(1);
+        out.writeUTF("Hex");
+        out.writeUTF("");
+        
+        PlayerTag tag = read(bytes, 3).getTag();
+        
+        assertTag(new PlayerTag("Hex", TagColor.rgb(0x112233, 0x445566), true, 8L, ""), tag);
+    }
+    
+    @Test
+    void rejectsInvalidColor() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertThrows(IOException.class, () -> {
+            writeHeader(new DataOutputStream(bytes), 1L, ChatColor.BOLD.ordinal(), true, "Bad");
+            read(bytes, 1);
+        });
+    }
+    
+    @Test
+    void higherVersionWins() {
+        PlayerTag local = new PlayerTag("A", ChatColor.RED, true, 10L);
+        
+        assertTrue(new TagDelta("a", PLAYER, local.withVersion(11L)).isNewerThan(local, "b"));
+        assertFalse(new TagDelta("z", PLAYER, local.withVersion(9L)).isNewerThan(local, "b"));
+    }
+    
+    @Test
+    void equalVersionsAreBrokenByNodeId() {
+        PlayerTag local = new PlayerTag("A", ChatColor.RED, true, 10L);
+        PlayerTag remote = local.withTagText("B");
+        
+        assertTrue(new TagDelta("node-b", PLAYER, remote).isNewerThan(local, "node-a"));
+        assertFalse(new TagDelta("node-a", PLAYER, remote).isNewerThan(local, "node-b"));
+        // A server never replaces its own change with itself
+        assertFalse(new TagDelta("node-a", PLAYER, remote).isNewerThan(local, "node-a"));
+    }
+    
+    /**
+     * Writes the fields shared by all formats. A null text leaves the
+     * color stops, flags and text to the caller.
+     */
+    private static void writeHeader(DataOutputStream out, long version, int color, boolean enabled, String text)
+            throws IOException {
+        out.writeLong(PLAYER.getMostSignificantBits());
+        out.writeLong(PLAYER.getLeastSignificantBits());
+        out.writeLong(version);
+        out.writeByte(color);
+        if (text != null) {
+            out.writeByte(enabled ? 1 : 0);
+            out.writeUTF(text);
+        }
+    }
+    
+    private static TagDelta roundTrip(TagDelta delta, int format) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        delta.writeTo(new DataOutputStream(bytes));
+        return read(bytes, format);
+    }
+    
+    private static TagDelta read(ByteArrayOutputStream bytes, int format) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        TagDelta delta = TagDelta.readFrom(in, "lobby", format);
+        assertEquals(-1, in.read(), "unread bytes left");
+        return delta;
+    }
+    
+    static void assertTag(PlayerTag expected, PlayerTag actual) {
+        assertEquals(expected.getTagText(), actual.getTagText());
+        assertEquals(expected.getTagColor(), actual.getTagColor());
+        assertEquals(expected.isEnabled(), actual.isEnabled());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getAnimation(), actual.getAnimation());
+        assertEquals(expected.getOwned(), actual.getOwned());
+        assertArrayEquals(expected.getActive(), actual.getActive());
+    }
+}